@@ -0,0 +1,607 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** A RowSource that groups the rows of its input and produces one row of
+ *  aggregate values (see Function) per group, by hash aggregation: each
+ *  input row is looked up by its key in a table of the groups seen so
+ *  far and folded into its group's accumulators, in a single pass.  The
+ *  accumulators hold their state in primitive arrays indexed by group
+ *  number, so that a group costs a few array elements rather than
+ *  objects.
+ *
+ *  If the groups outgrow a memory budget, no new groups are started:
+ *  the rows of groups not already present are instead divided by the
+ *  hash of their keys among PARTITIONS temporary files (SpillFiles),
+ *  while the rows of groups already present are still aggregated.  Once
+ *  the groups in memory have been produced, each file is aggregated in
+ *  the same way, using different bits of the hash to divide it further
+ *  if need be (up to MAX_DEPTH levels).  Since all rows of a group land
+ *  in the same file, every group is produced exactly once.
+ *
+ *  The values of each input row are its key columns followed by the
+ *  arguments of the aggregates.  With no key columns, all input forms a
+ *  single group.  As db61b has no null value, that group produces no
+ *  row if the input is empty and any aggregate has no natural value
+ *  over no rows (as do min, max, and avg).
+ *  @author Yasaman Bahri
+ */
+class Aggregate implements RowSource {
+
+    /** The aggregate functions. */
+    enum Function {
+        /** Number of rows. */
+        COUNT,
+        /** Sum of the values, as a double.  The sum of an int column is
+         *  accumulated exactly, in a long, and prints as an integer. */
+        SUM,
+        /** Least value. */
+        MIN,
+        /** Greatest value. */
+        MAX,
+        /** Mean of the values, as a double. */
+        AVG;
+
+        /** Return the function named NAME in a select clause, or null if
+         *  there is none. */
+        static Function named(String name) {
+            for (Function f : values()) {
+                if (f.title().equals(name)) {
+                    return f;
+                }
+            }
+            return null;
+        }
+
+        /** Return my name as written in select clauses. */
+        String title() {
+            return name().toLowerCase();
+        }
+
+        /** Return the type of my values when applied to values of type
+         *  ARG. */
+        ColumnType type(ColumnType arg) {
+            switch (this) {
+            case COUNT:
+                return ColumnType.INT;
+            case SUM: case AVG:
+                return ColumnType.DOUBLE;
+            default:
+                return arg;
+            }
+        }
+    }
+
+    /** Number of files among which rows are divided when spilling. */
+    static final int PARTITIONS = 16;
+    /** Number of levels of partitioning after which groups are held in
+     *  memory regardless of the budget, since the 32 bits of the hash
+     *  have then all been used. */
+    private static final int MAX_DEPTH = 8;
+    /** Estimated memory used by a group apart from its key values. */
+    private static final int GROUP_OVERHEAD = 64;
+    /** Estimated memory used by a key value apart from its characters. */
+    private static final int VALUE_OVERHEAD = 48;
+    /** Estimated memory used by a group in each accumulator. */
+    private static final int ACCUMULATOR_SIZE = 16;
+
+    /** A RowSource producing one row per group of the rows of INPUT that
+     *  agree on their first NUMKEYS values.  TYPES gives the types of
+     *  the values of input rows.  Aggregate J applies FUNCTIONS[J] to
+     *  value ARGS[J] of the rows of a group (ARGS[J] is ignored for
+     *  COUNT).  Value I of an output row is the key value OUTPUT[I] if
+     *  that is less than NUMKEYS, and otherwise aggregate OUTPUT[I] -
+     *  NUMKEYS.  Groups are held in memory until their estimated size
+     *  exceeds MEMORY bytes. */
+    Aggregate(RowSource input, ColumnType[] types, int numKeys,
+              Function[] functions, int[] args, int[] output, long memory) {
+        this(input, types, numKeys, functions, args, output, memory, 0);
+    }
+
+    /** As for the public constructor, where INPUT holds rows spilled
+     *  DEPTH levels of partitioning deep. */
+    private Aggregate(RowSource input, ColumnType[] types, int numKeys,
+                      Function[] functions, int[] args, int[] output,
+                      long memory, int depth) {
+        _input = input;
+        _types = types;
+        _numKeys = numKeys;
+        _functions = functions;
+        _args = args;
+        _output = output;
+        _memory = memory;
+        _depth = depth;
+    }
+
+    @Override
+    public boolean next() {
+        if (!_consumed) {
+            consume();
+            _consumed = true;
+        }
+        while (_group < _numGroups) {
+            int g = _group;
+            _group += 1;
+            if (defined(g)) {
+                _row = result(g);
+                return true;
+            }
+        }
+        _groups = null;
+        _accumulators = null;
+        while (true) {
+            if (_child != null) {
+                if (_child.next()) {
+                    _row = _child.row();
+                    return true;
+                }
+                _child = null;
+            }
+            if (_spills == null || _partition >= PARTITIONS) {
+                return false;
+            }
+            SpillFile file = _spills[_partition];
+            _spills[_partition] = null;
+            _partition += 1;
+            if (file != null) {
+                file.finish();
+                _child = new Aggregate(new Drain(file), _types, _numKeys,
+                                       _functions, _args, _output,
+                                       _memory, _depth + 1);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (_child != null) {
+            _child.close();
+            _child = null;
+        }
+        closeSpills();
+        _input.close();
+    }
+
+    @Override
+    public Row row() {
+        return _row;
+    }
+
+    /** Read all of my input, aggregating it or spilling it. */
+    private void consume() {
+        _accumulators = new Accumulator[_functions.length];
+        for (int j = 0; j < _functions.length; j += 1) {
+            _accumulators[j] = accumulator(_functions[j], _args[j]);
+        }
+        if (_numKeys == 0) {
+            start(0);
+        } else {
+            String[] titles = new String[_numKeys];
+            for (int k = 0; k < _numKeys; k += 1) {
+                titles[k] = "K" + k;
+            }
+            _groups = new Table("groups", titles,
+                                Arrays.copyOf(_types, _numKeys),
+                                TableStore.ROWS);
+        }
+        try {
+            while (_input.next()) {
+                Row row = _input.row();
+                int group = _numKeys == 0 ? 0 : group(row);
+                if (group >= 0) {
+                    for (Accumulator acc : _accumulators) {
+                        acc.add(group, row);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            closeSpills();
+            throw e;
+        }
+    }
+
+    /** Return the number of the group of ROW, starting a new group if
+     *  there is room, or spill ROW and return -1 if there is not. */
+    private int group(Row row) {
+        String[] data = new String[_numKeys];
+        for (int k = 0; k < _numKeys; k += 1) {
+            data[k] = row.get(k);
+        }
+        Row key = new Row(data);
+        int group = _groups.find(key);
+        if (group >= 0) {
+            return group;
+        }
+        if (_spills != null) {
+            int h = Integer.rotateLeft(key.hashCode() * 0x9E3779B9,
+                                       4 * _depth);
+            int p = (h >>> 16) % PARTITIONS;
+            if (_spills[p] == null) {
+                _spills[p] = new SpillFile();
+            }
+            _spills[p].write(row);
+            return -1;
+        }
+        _groups.add(key);
+        group = _groups.size() - 1;
+        start(group);
+        _used += GROUP_OVERHEAD + ACCUMULATOR_SIZE * _accumulators.length;
+        for (String value : data) {
+            _used += VALUE_OVERHEAD + value.length();
+        }
+        if (_used > _memory && _depth < MAX_DEPTH) {
+            _spills = new SpillFile[PARTITIONS];
+        }
+        return group;
+    }
+
+    /** Make room in my accumulators for group GROUP, which is new. */
+    private void start(int group) {
+        for (Accumulator acc : _accumulators) {
+            acc.reserve(group + 1);
+        }
+        _numGroups = group + 1;
+    }
+
+    /** Return true iff all my aggregates have values for group G. */
+    private boolean defined(int g) {
+        for (Accumulator acc : _accumulators) {
+            if (!acc.defined(g)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the output row for group G. */
+    private Row result(int g) {
+        String[] data = new String[_output.length];
+        for (int i = 0; i < data.length; i += 1) {
+            int k = _output[i];
+            data[i] = k < _numKeys ? _groups.value(g, k)
+                : _accumulators[k - _numKeys].result(g);
+        }
+        return new Row(data);
+    }
+
+    /** Delete any files I have spilled to and not yet aggregated. */
+    private void closeSpills() {
+        if (_spills != null) {
+            for (SpillFile file : _spills) {
+                if (file != null) {
+                    file.close();
+                }
+            }
+            _spills = null;
+        }
+    }
+
+    /** Return an accumulator for FUNCTION applied to input value ARG. */
+    private Accumulator accumulator(Function function, int arg) {
+        ColumnType type = arg < 0 ? ColumnType.STRING : _types[arg];
+        switch (function) {
+        case COUNT:
+            return new Count();
+        case SUM:
+            return type == ColumnType.INT ? new IntSum(arg)
+                : new DoubleSum(arg);
+        case AVG:
+            return new Average(arg);
+        default:
+            return type.isNumeric()
+                ? new NumericExtreme(arg, function == Function.MAX, type)
+                : new StringExtreme(arg, function == Function.MAX);
+        }
+    }
+
+    /** The state of one aggregate for each group. */
+    private abstract static class Accumulator {
+        /** Make room for groups 0 .. N - 1. */
+        abstract void reserve(int n);
+
+        /** Fold ROW into group G. */
+        abstract void add(int g, Row row);
+
+        /** Return true iff group G has a value. */
+        boolean defined(int g) {
+            return true;
+        }
+
+        /** Return the value of group G. */
+        abstract String result(int g);
+
+        /** Return A, lengthened if need be to hold at least N values. */
+        static long[] fit(long[] a, int n) {
+            return a.length >= n ? a
+                : Arrays.copyOf(a, Math.max(n, 2 * a.length));
+        }
+
+        /** Return A, lengthened if need be to hold at least N values. */
+        static double[] fit(double[] a, int n) {
+            return a.length >= n ? a
+                : Arrays.copyOf(a, Math.max(n, 2 * a.length));
+        }
+    }
+
+    /** Accumulates count. */
+    private static class Count extends Accumulator {
+        @Override
+        void reserve(int n) {
+            _counts = fit(_counts, n);
+        }
+
+        @Override
+        void add(int g, Row row) {
+            _counts[g] += 1;
+        }
+
+        @Override
+        String result(int g) {
+            return Long.toString(_counts[g]);
+        }
+
+        /** Number of rows in each group. */
+        private long[] _counts = new long[1];
+    }
+
+    /** Accumulates sum of an int column, in a long, which cannot
+     *  overflow for fewer than 2^32 rows.  Like every sum, the result is
+     *  a double, and prints as a double column's values do. */
+    private static class IntSum extends Accumulator {
+        /** Sums input value ARG. */
+        IntSum(int arg) {
+            _arg = arg;
+        }
+
+        @Override
+        void reserve(int n) {
+            _sums = fit(_sums, n);
+        }
+
+        @Override
+        void add(int g, Row row) {
+            _sums[g] += (long) row.number(_arg);
+        }
+
+        @Override
+        String result(int g) {
+            return Double.toString(_sums[g]);
+        }
+
+        /** The input value summed. */
+        private final int _arg;
+        /** Sum for each group. */
+        private long[] _sums = new long[1];
+    }
+
+    /** Accumulates sum of a double column. */
+    private static class DoubleSum extends Accumulator {
+        /** Sums input value ARG. */
+        DoubleSum(int arg) {
+            _arg = arg;
+        }
+
+        @Override
+        void reserve(int n) {
+            _sums = fit(_sums, n);
+        }
+
+        @Override
+        void add(int g, Row row) {
+            _sums[g] += row.number(_arg);
+        }
+
+        @Override
+        String result(int g) {
+            return Double.toString(_sums[g]);
+        }
+
+        /** The input value summed. */
+        private final int _arg;
+        /** Sum for each group. */
+        private double[] _sums = new double[1];
+    }
+
+    /** Accumulates avg. */
+    private static class Average extends Accumulator {
+        /** Averages input value ARG. */
+        Average(int arg) {
+            _arg = arg;
+        }
+
+        @Override
+        void reserve(int n) {
+            _sums = fit(_sums, n);
+            _counts = fit(_counts, n);
+        }
+
+        @Override
+        void add(int g, Row row) {
+            _sums[g] += row.number(_arg);
+            _counts[g] += 1;
+        }
+
+        @Override
+        boolean defined(int g) {
+            return _counts[g] > 0;
+        }
+
+        @Override
+        String result(int g) {
+            return Double.toString(_sums[g] / _counts[g]);
+        }
+
+        /** The input value averaged. */
+        private final int _arg;
+        /** Sum for each group. */
+        private double[] _sums = new double[1];
+        /** Number of rows in each group. */
+        private long[] _counts = new long[1];
+    }
+
+    /** Accumulates min or max of a numeric column. */
+    private static class NumericExtreme extends Accumulator {
+        /** Finds the greatest (if MAX) or least value of input value ARG,
+         *  of type TYPE. */
+        NumericExtreme(int arg, boolean max, ColumnType type) {
+            _arg = arg;
+            _max = max;
+            _type = type;
+        }
+
+        @Override
+        void reserve(int n) {
+            _values = fit(_values, n);
+            _counts = fit(_counts, n);
+        }
+
+        @Override
+        void add(int g, Row row) {
+            double x = row.number(_arg);
+            if (_counts[g] == 0 || (_max ? x > _values[g] : x < _values[g])) {
+                _values[g] = x;
+            }
+            _counts[g] += 1;
+        }
+
+        @Override
+        boolean defined(int g) {
+            return _counts[g] > 0;
+        }
+
+        @Override
+        String result(int g) {
+            return _type == ColumnType.INT ? Long.toString((long) _values[g])
+                : Double.toString(_values[g]);
+        }
+
+        /** The input value compared. */
+        private final int _arg;
+        /** True for max, false for min. */
+        private final boolean _max;
+        /** The type of the input value. */
+        private final ColumnType _type;
+        /** Extreme value for each group. */
+        private double[] _values = new double[1];
+        /** Number of rows in each group. */
+        private long[] _counts = new long[1];
+    }
+
+    /** Accumulates min or max of a string column. */
+    private static class StringExtreme extends Accumulator {
+        /** Finds the greatest (if MAX) or least value of input value
+         *  ARG. */
+        StringExtreme(int arg, boolean max) {
+            _arg = arg;
+            _max = max;
+        }
+
+        @Override
+        void reserve(int n) {
+            if (_values.length < n) {
+                _values = Arrays.copyOf(_values,
+                                        Math.max(n, 2 * _values.length));
+            }
+        }
+
+        @Override
+        void add(int g, Row row) {
+            String x = row.get(_arg);
+            if (_values[g] == null) {
+                _values[g] = x;
+            } else {
+                int c = x.compareTo(_values[g]);
+                if (_max ? c > 0 : c < 0) {
+                    _values[g] = x;
+                }
+            }
+        }
+
+        @Override
+        boolean defined(int g) {
+            return _values[g] != null;
+        }
+
+        @Override
+        String result(int g) {
+            return _values[g];
+        }
+
+        /** The input value compared. */
+        private final int _arg;
+        /** True for max, false for min. */
+        private final boolean _max;
+        /** Extreme value for each group. */
+        private String[] _values = new String[1];
+    }
+
+    /** A RowSource producing the rows of a finished SpillFile, which it
+     *  deletes once they are exhausted. */
+    private static class Drain implements RowSource {
+        /** A RowSource producing the rows of FILE. */
+        Drain(SpillFile file) {
+            _file = file;
+        }
+
+        @Override
+        public boolean next() {
+            if (_file.next()) {
+                return true;
+            }
+            _file.close();
+            return false;
+        }
+
+        @Override
+        public Row row() {
+            return _file.row();
+        }
+
+        @Override
+        public void close() {
+            _file.close();
+        }
+
+        /** The file read. */
+        private final SpillFile _file;
+    }
+
+    /** My input. */
+    private final RowSource _input;
+    /** Types of the values of my input rows. */
+    private final ColumnType[] _types;
+    /** Number of key values at the start of each input row. */
+    private final int _numKeys;
+    /** The function of each aggregate. */
+    private final Function[] _functions;
+    /** The input value each aggregate applies to. */
+    private final int[] _args;
+    /** The key value or aggregate of each output value (see
+     *  constructor). */
+    private final int[] _output;
+    /** Estimated number of bytes of groups to hold in memory. */
+    private final long _memory;
+    /** Number of times my input has been partitioned. */
+    private final int _depth;
+    /** The keys of my groups, in order of group number. */
+    private Table _groups;
+    /** True once my input has been read. */
+    private boolean _consumed;
+    /** The accumulator of each aggregate, while my groups are held. */
+    private Accumulator[] _accumulators;
+    /** Number of groups in memory. */
+    private int _numGroups;
+    /** Estimated number of bytes used by my groups. */
+    private long _used;
+    /** Files holding the rows of groups that did not fit in memory, or
+     *  null if there were none (yet). */
+    private SpillFile[] _spills;
+    /** Number of the next group to produce. */
+    private int _group;
+    /** Index of the next file in _spills to aggregate. */
+    private int _partition;
+    /** The aggregation of the file being produced, if any. */
+    private Aggregate _child;
+    /** The current row. */
+    private Row _row;
+}
@@ -0,0 +1,95 @@
+package db61b;
+
+import java.util.List;
+
+/** An Operator that joins each combination of its outer input with the
+ *  rows of another table whose keys bear an inequality to its key.  The
+ *  other table's rows are sorted by key beforehand, so that the matches
+ *  for each outer combination are a prefix or suffix of the sorted rows,
+ *  found by binary search.
+ *  @author Yasaman Bahri
+ */
+class BandJoin implements Operator {
+
+    /** An Operator producing each combination of a member of OUTER with
+     *  a row of INNER's table such that OUTERCOL's key (as by
+     *  key(NUMERIC)) bears the relation REL (one of "<", "<=", ">", and
+     *  ">=") to the row's key, and that satisfies REST.  KEYS are the
+     *  keys of the candidate inner rows in increasing order, and ROWS
+     *  their positions. */
+    BandJoin(Operator outer, TableIterator inner, Column outerCol,
+             boolean numeric, String rel, Object[] keys, int[] rows,
+             List<Condition> rest) {
+        _outer = outer;
+        _inner = inner;
+        _outerCol = outerCol;
+        _numeric = numeric;
+        _suffix = rel.startsWith("<");
+        _inclusive = rel.endsWith("=");
+        _keys = keys;
+        _rows = rows;
+        _rest = rest;
+    }
+
+    @Override
+    public boolean next() {
+        while (true) {
+            while (_i < _to) {
+                _inner.seek(_rows[_i]);
+                _i += 1;
+                if (Condition.test(_rest)) {
+                    return true;
+                }
+            }
+            if (!_outer.next()) {
+                return false;
+            }
+            int bound = bound(_outerCol.key(_numeric));
+            _i = _suffix ? bound : 0;
+            _to = _suffix ? _keys.length : bound;
+        }
+    }
+
+    /** Return the number of leading members of _keys that come before
+     *  the matches of KEY, if I match suffixes, or that match KEY, if I
+     *  match prefixes. */
+    private int bound(Object key) {
+        int lo = 0, hi = _keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Column.compareKeys(_keys[mid], key);
+            if (c > 0 || c == 0 && _suffix == _inclusive) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /** My outer input. */
+    private final Operator _outer;
+    /** Iterator over the table joined to it. */
+    private final TableIterator _inner;
+    /** The column of the outer input whose key is compared. */
+    private final Column _outerCol;
+    /** True iff keys are numeric. */
+    private final boolean _numeric;
+    /** True iff the inner keys matching an outer key are the greater
+     *  ones. */
+    private final boolean _suffix;
+    /** True iff an inner key equal to the outer key matches. */
+    private final boolean _inclusive;
+    /** Keys of the inner rows, in increasing order. */
+    private final Object[] _keys;
+    /** _rows[i] is the position of the inner row whose key is
+     *  _keys[i]. */
+    private final int[] _rows;
+    /** Further conditions on the joined combinations. */
+    private final List<Condition> _rest;
+    /** Index into _rows of the next candidate for the current outer
+     *  combination. */
+    private int _i;
+    /** Index just past the last candidate. */
+    private int _to;
+}
@@ -0,0 +1,72 @@
+package db61b;
+
+import java.util.List;
+
+/** An Operator that produces those rows of one table that satisfy a list
+ *  of Conditions on that table alone, evaluating the conditions a block
+ *  at a time.  It gathers the positions of up to BATCH_SIZE rows into a
+ *  selection vector, has each condition in turn remove the positions of
+ *  rows failing it (see Condition.select), and then produces the rows
+ *  that remain.  Operators above it, such as Project, thus see only
+ *  the selected rows, and each condition runs as one tight loop per
+ *  block rather than as a call per row.
+ *  @author Yasaman Bahri
+ */
+class BatchScan implements Operator {
+
+    /** Number of rows in a block. */
+    static final int BATCH_SIZE = 1024;
+
+    /** An Operator producing those of rows FROM to TO - 1 of ITER's
+     *  table, in order, that satisfy all of CONDITIONS, which are
+     *  applied in order, where row #i is at position ROWS.get(i), or at
+     *  position i if ROWS is null. */
+    BatchScan(TableIterator iter, IntList rows, int from, int to,
+              List<Condition> conditions) {
+        _iter = iter;
+        _rows = rows;
+        _next = from;
+        _to = to;
+        _conditions = conditions;
+    }
+
+    @Override
+    public boolean next() {
+        while (_i >= _n) {
+            if (_next >= _to) {
+                return false;
+            }
+            int end = Math.min(_to, _next + BATCH_SIZE);
+            _n = 0;
+            for (int j = _next; j < end; j += 1) {
+                _selected[_n] = _rows == null ? j : _rows.get(j);
+                _n += 1;
+            }
+            _next = end;
+            for (int c = 0; c < _conditions.size() && _n > 0; c += 1) {
+                _n = _conditions.get(c).select(_selected, _n);
+            }
+            _i = 0;
+        }
+        _iter.seek(_selected[_i]);
+        _i += 1;
+        return true;
+    }
+
+    /** Iterator over my table. */
+    private final TableIterator _iter;
+    /** Positions of the rows I range over, or null for all rows. */
+    private final IntList _rows;
+    /** Index of the first row of the next block. */
+    private int _next;
+    /** Index just past the last row to consider. */
+    private final int _to;
+    /** The conditions my output satisfies. */
+    private final List<Condition> _conditions;
+    /** Positions of the selected rows of the current block. */
+    private final int[] _selected = new int[BATCH_SIZE];
+    /** Number of selected rows in the current block. */
+    private int _n;
+    /** Index in _selected of the next row to produce. */
+    private int _i;
+}
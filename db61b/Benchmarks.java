@@ -0,0 +1,191 @@
+package db61b;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+/** Timing benchmarks for parts of db61b.  Run as
+ *      java db61b.Benchmarks [ROWS]
+ *  Each benchmark reports the best of several runs, after warming up.
+ *  @author Yasaman Bahri
+ */
+class Benchmarks {
+
+    /** Number of timed runs of each benchmark. */
+    private static final int RUNS = 5;
+
+    /** Run all benchmarks on tables of ARGS[0] (default 1000000) rows. */
+    public static void main(String... args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        conditions(rows, TableStore.ROWS);
+        conditions(rows, TableStore.COLUMNAR);
+        lexers(rows / 5);
+    }
+
+    /** Compare evaluating conditions the way Condition.test did before
+     *  it was compiled (a Boolean array per call, dispatching on the
+     *  relation every time) with the compiled Conditions, over a table of
+     *  ROWS rows stored as STORAGE. */
+    static void conditions(int rows, String storage) {
+        Table table = randomTable("T", new String[] {"A", "B", "C"},
+                                  rows, 100, storage);
+        TableIterator iter = table.tableIterator();
+        List<TableIterator> iters = Arrays.asList(iter);
+        List<Condition> conds = new ArrayList<Condition>();
+        conds.add(new Condition(column(table, "A", iters), "<=",
+                                column(table, "B", iters)));
+        conds.add(new Condition(column(table, "C", iters), "!=", "v7"));
+        conds.add(new Condition(column(table, "A", iters), "=", "v42"));
+        long legacy = time(() -> {
+            int n = 0;
+            for (iter.reset(); iter.hasRow(); iter.advance()) {
+                if (legacyTest(conds)) {
+                    n += 1;
+                }
+            }
+            return n;
+        });
+        List<Condition> ordered = Condition.ordered(conds);
+        long compiled = time(() -> {
+            int n = 0;
+            for (iter.reset(); iter.hasRow(); iter.advance()) {
+                if (Condition.test(ordered)) {
+                    n += 1;
+                }
+            }
+            return n;
+        });
+        System.out.printf("conditions/%s: %d rows: legacy %d ms, "
+                          + "compiled %d ms (%.1fx)%n",
+                          storage, rows, legacy, compiled,
+                          (double) legacy / Math.max(1, compiled));
+    }
+
+    /** Compare the tokens per second read by a Tokenizer and a Lexer
+     *  from a script of LINES insert statements, testing each token
+     *  against a pattern as the interpreter does. */
+    static void lexers(int lines) {
+        StringBuilder script = new StringBuilder();
+        Random random = new Random(lines);
+        for (int i = 0; i < lines; i += 1) {
+            script.append(String.format("insert into T values 'v%d', "
+                                        + "'%d', 'w%d'; /* %d */%n",
+                                        random.nextInt(1000), i,
+                                        random.nextInt(50), i));
+        }
+        String text = script.toString();
+        long tokenizer = time(() -> {
+            Tokenizer input = new Tokenizer(new Scanner(text), null);
+            long n = 0;
+            while (!input.nextIs("*EOF*")) {
+                n += input.nextIs(Tokenizer.LITERAL) ? 1 : 0;
+                input.next();
+            }
+            return n;
+        });
+        long lexer = time(() -> {
+            Lexer input = new Lexer(new StringReader(text), null);
+            long n = 0;
+            while (!input.nextIs("*EOF*")) {
+                n += input.nextIs(Tokenizer.LITERAL) ? 1 : 0;
+                input.next();
+            }
+            return n;
+        });
+        long tokens = 10L * lines;
+        System.out.printf("lexers: %d lines: Tokenizer %d ms "
+                          + "(%d tokens/s), Lexer %d ms (%d tokens/s)"
+                          + " (%.1fx)%n", lines,
+                          tokenizer, 1000 * tokens / Math.max(1, tokenizer),
+                          lexer, 1000 * tokens / Math.max(1, lexer),
+                          (double) tokenizer / Math.max(1, lexer));
+    }
+
+    /** The evaluation of a conjunction of CONDS as done by the original
+     *  Condition.test, kept here as a baseline. */
+    private static boolean legacyTest(List<Condition> conds) {
+        for (Condition cond : conds) {
+            int tVal = cond.left().value().compareTo(cond.right().value());
+            Boolean[] truths = new Boolean[3];
+            Arrays.fill(truths, Boolean.FALSE);
+            truths[tVal > 0 ? 0 : tVal < 0 ? 2 : 1] = true;
+            boolean result;
+            switch (cond.relation()) {
+            case ">":
+                result = truths[0];
+                break;
+            case ">=":
+                result = truths[0] || truths[1];
+                break;
+            case "<":
+                result = truths[2];
+                break;
+            case "<=":
+                result = truths[2] || truths[1];
+                break;
+            case "=":
+                result = truths[1];
+                break;
+            default:
+                result = !truths[1];
+                break;
+            }
+            if (!result) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** A benchmark body, returning a result that keeps the work from
+     *  being optimized away. */
+    interface Body {
+        /** Run once. */
+        long run();
+    }
+
+    /** Return the best time in milliseconds of RUNS runs of BODY, after
+     *  one untimed run. */
+    static long time(Body body) {
+        long sink = body.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i += 1) {
+            long start = System.nanoTime();
+            sink += body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == Long.MIN_VALUE) {
+            System.out.println();
+        }
+        return best / 1000000;
+    }
+
+    /** Return a table named NAME with columns TITLES stored as STORAGE,
+     *  filled with ROWS rows of values drawn from "v0" to "vDISTINCT-1".
+     *  Duplicate rows are dropped, so the result may be a little
+     *  smaller. */
+    static Table randomTable(String name, String[] titles, int rows,
+                             int distinct, String storage) {
+        Random random = new Random(name.hashCode());
+        Table table = new Table(name, titles, storage);
+        for (int i = 0; i < rows; i += 1) {
+            String[] data = new String[titles.length];
+            for (int k = 0; k < data.length; k += 1) {
+                data[k] = "v" + random.nextInt(distinct);
+            }
+            table.add(new Row(data));
+        }
+        return table;
+    }
+
+    /** Return the column TITLE of TABLE resolved against ITERS. */
+    static Column column(Table table, String title,
+                         List<TableIterator> iters) {
+        Column col = new Column(table, title);
+        col.resolve(iters);
+        return col;
+    }
+}
@@ -0,0 +1,251 @@
+package db61b;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static db61b.Utils.*;
+
+/** Reading and writing tables in db61b's binary file format.  A file
+ *  consists of
+ *
+ *    a header:  the 8 bytes of MAGIC, then the number of columns, then
+ *               for each column its title (as by writeUTF) and the
+ *               ordinal of its ColumnType (one byte);
+ *    row groups, until the end of the file, each consisting of its number
+ *               of rows, R, followed by one block per column.
+ *
+ *  The block of an int column is R ints and that of a double column R
+ *  doubles.  The block of a string column is the number of entries in
+ *  its dictionary, the number of bytes the dictionary occupies, the
+ *  dictionary itself (each entry the length of its UTF-8 encoding
+ *  followed by the encoding), and finally R ints, the dictionary code of
+ *  each row's value.  All numbers are big-endian.
+ *
+ *  Tables are read by memory-mapping each block (see MappedStore), so
+ *  reading a table costs time proportional to its number of row groups,
+ *  not its size, and only the parts of the file actually used are ever
+ *  read from disk.
+ *  @author Yasaman Bahri
+ */
+class BinaryTable {
+
+    /** The first bytes of every binary table file. */
+    static final byte[] MAGIC = "DB61BTBL".getBytes(StandardCharsets.UTF_8);
+    /** Maximum number of rows in a row group. */
+    static final int GROUP_SIZE = 1 << 20;
+
+    /** Return true iff FILE exists and begins with MAGIC. */
+    static boolean isBinary(File file) {
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] start = new byte[MAGIC.length];
+            return in.read(start) == start.length
+                && Arrays.equals(start, MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Return the table named NAME in the binary file FILE, whose store
+     *  is mapped from it.  Once rows are added, the table is stored as
+     *  STORAGE. */
+    static Table read(String name, File file, String storage) {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long size = channel.size();
+            ByteBuffer header =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                            Math.min(size, Integer.MAX_VALUE));
+            header.position(MAGIC.length);
+            int numColumns = header.getInt();
+            String[] titles = new String[numColumns];
+            ColumnType[] types = new ColumnType[numColumns];
+            MappedVector[] columns = new MappedVector[numColumns];
+            for (int k = 0; k < numColumns; k += 1) {
+                byte[] title = new byte[header.getShort() & 0xffff];
+                header.get(title);
+                titles[k] = new String(title, StandardCharsets.UTF_8);
+                types[k] = ColumnType.values()[header.get()];
+                columns[k] = new MappedVector(types[k]);
+            }
+            long pos = header.position();
+            int groups;
+            for (groups = 0; pos < size; groups += 1) {
+                int rows = readInt(channel, pos);
+                pos += 4;
+                for (int k = 0; k < numColumns; k += 1) {
+                    pos = mapBlock(channel, pos, rows, types[k],
+                                   columns[k]);
+                }
+            }
+            Table table = new Table(name, titles, types,
+                                    new MappedStore(columns), storage);
+            table.saved().written(file, TableFile.BINARY, table.size(),
+                                  groups);
+            return table;
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof DBException) {
+                throw (DBException) e;
+            }
+            throw error("problem reading from %s", file);
+        }
+    }
+
+    /** Map the block of ROWS values of type TYPE starting at POS in
+     *  CHANNEL as a new row group of COLUMN, and return the position
+     *  just past it. */
+    private static long mapBlock(FileChannel channel, long pos, int rows,
+                                 ColumnType type, MappedVector column)
+        throws IOException {
+        ByteBuffer dict = null;
+        int dictSize = 0;
+        if (type == ColumnType.STRING) {
+            dictSize = readInt(channel, pos);
+            int dictBytes = readInt(channel, pos + 4);
+            pos += 8;
+            dict = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                               dictBytes);
+            pos += dictBytes;
+        }
+        int width = type == ColumnType.DOUBLE ? 8 : 4;
+        ByteBuffer values = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                                        (long) rows * width);
+        column.addGroup(rows, values, dict, dictSize);
+        return pos + (long) rows * width;
+    }
+
+    /** Return the int at POS in CHANNEL. */
+    private static int readInt(FileChannel channel, long pos)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0) {
+                throw error("truncated binary table file");
+            }
+        }
+        return buf.getInt(0);
+    }
+
+    /** Write TABLE to FILE in binary format.  The file is written under a
+     *  temporary name and then renamed, so that a table mapped from the
+     *  old contents of FILE remains readable. */
+    static void write(Table table, File file) {
+        write(table, file, GROUP_SIZE);
+    }
+
+    /** Write TABLE to FILE as above, in row groups of at most GROUPSIZE
+     *  rows. */
+    static void write(Table table, File file, int groupSize) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.write(MAGIC);
+            out.writeInt(table.numColumns());
+            for (int k = 0; k < table.numColumns(); k += 1) {
+                out.writeUTF(table.title(k));
+                out.writeByte(table.type(k).ordinal());
+            }
+            for (int start = 0; start < table.size(); start += groupSize) {
+                writeGroup(table, start,
+                           Math.min(table.size(), start + groupSize), out);
+            }
+        } catch (IOException e) {
+            throw error("trouble writing to %s", file);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw error("trouble writing to %s", file);
+        }
+    }
+
+    /** Append the rows of TABLE from position FROM on to FILE, which
+     *  holds its earlier rows in binary format, as new row groups, and
+     *  return the number of groups appended.  A table mapped from FILE
+     *  remains readable, since the part of the file it maps is
+     *  unchanged. */
+    static int append(Table table, File file, int from) {
+        int groups = 0;
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            for (int start = from; start < table.size();
+                 start += GROUP_SIZE) {
+                writeGroup(table, start,
+                           Math.min(table.size(), start + GROUP_SIZE), out);
+                groups += 1;
+            }
+        } catch (IOException e) {
+            throw error("trouble writing to %s", file);
+        }
+        return groups;
+    }
+
+    /** Write rows FROM to TO - 1 of TABLE to OUT as a row group. */
+    static void writeGroup(Table table, int from, int to,
+                           DataOutputStream out) throws IOException {
+        out.writeInt(to - from);
+        for (int k = 0; k < table.numColumns(); k += 1) {
+            switch (table.type(k)) {
+            case INT:
+                for (int r = from; r < to; r += 1) {
+                    out.writeInt(ColumnType.parseInt(table.value(r, k)));
+                }
+                break;
+            case DOUBLE:
+                for (int r = from; r < to; r += 1) {
+                    out.writeDouble(
+                        ColumnType.parseDouble(table.value(r, k)));
+                }
+                break;
+            default:
+                writeStrings(table, k, from, to, out);
+                break;
+            }
+        }
+    }
+
+    /** Write the dictionary-encoded block of column K of rows FROM to
+     *  TO - 1 of TABLE to OUT. */
+    private static void writeStrings(Table table, int k, int from, int to,
+                                     DataOutputStream out)
+        throws IOException {
+        HashMap<String, Integer> codes = new HashMap<String, Integer>();
+        int[] rowCodes = new int[to - from];
+        IntList entries = new IntList();
+        int dictBytes = 0;
+        for (int r = from; r < to; r += 1) {
+            String value = table.value(r, k);
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size();
+                codes.put(value, code);
+                entries.add(r);
+                dictBytes += 4 + value.getBytes(StandardCharsets.UTF_8)
+                    .length;
+            }
+            rowCodes[r - from] = code;
+        }
+        out.writeInt(codes.size());
+        out.writeInt(dictBytes);
+        for (int i = 0; i < entries.size(); i += 1) {
+            byte[] bytes = table.value(entries.get(i), k)
+                .getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        for (int code : rowCodes) {
+            out.writeInt(code);
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** A compressed set of non-negative ints (row positions), in the manner
+ *  of a Roaring bitmap.  The ints are divided into chunks of 2^16 by
+ *  their high 16 bits, and each non-empty chunk holds its members' low
+ *  16 bits in a container: a sorted array of chars while it has at
+ *  most ARRAY_MAX members, and otherwise a bitset of 2^16 bits (1024
+ *  longs).  A sparse chunk thus costs two bytes per member and a dense
+ *  one at most 8 KB, and intersections, unions, and differences of
+ *  dense chunks are computed a word (64 positions) at a time.
+ *
+ *  Bitmaps produced by and, or, and andNot are new; their operands are
+ *  not changed.
+ *  @author Yasaman Bahri
+ */
+class Bitmap {
+
+    /** Maximum number of members of a chunk held as an array. */
+    static final int ARRAY_MAX = 4096;
+    /** Number of longs in a bitset container. */
+    private static final int WORDS = 1 << 10;
+
+    /** An empty set. */
+    Bitmap() {
+        _keys = new char[4];
+        _chunks = new Object[4];
+    }
+
+    /** Return the set of all of 0 .. N-1. */
+    static Bitmap range(int n) {
+        Bitmap result = new Bitmap();
+        for (int start = 0; start < n; start += 1 << 16) {
+            int size = Math.min(1 << 16, n - start);
+            Object chunk;
+            if (size <= ARRAY_MAX) {
+                char[] values = new char[size];
+                for (int i = 0; i < size; i += 1) {
+                    values[i] = (char) i;
+                }
+                chunk = new ArrayChunk(values, size);
+            } else {
+                long[] words = new long[WORDS];
+                Arrays.fill(words, 0, size >>> 6, -1L);
+                if ((size & 63) != 0) {
+                    words[size >>> 6] = (1L << (size & 63)) - 1;
+                }
+                chunk = new BitsChunk(words, size);
+            }
+            result.append((char) (start >>> 16), chunk);
+        }
+        return result;
+    }
+
+    /** Return the set of the members of POSITIONS, which must be in
+     *  increasing order. */
+    static Bitmap of(IntList positions) {
+        Bitmap result = new Bitmap();
+        for (int i = 0; i < positions.size(); i += 1) {
+            result.add(positions.get(i));
+        }
+        return result;
+    }
+
+    /** Add X to me.  This is fastest when X is at least my largest
+     *  member, as when adding row positions in order. */
+    void add(int x) {
+        char key = (char) (x >>> 16), low = (char) x;
+        int k;
+        if (_size > 0 && _keys[_size - 1] == key) {
+            k = _size - 1;
+        } else {
+            k = find(key);
+            if (k < 0) {
+                k = -k - 1;
+                insert(k, key, new ArrayChunk(new char[4], 0));
+            }
+        }
+        Object chunk = _chunks[k];
+        if (chunk instanceof BitsChunk) {
+            ((BitsChunk) chunk).add(low);
+        } else {
+            ArrayChunk array = (ArrayChunk) chunk;
+            if (!array.add(low)) {
+                _chunks[k] = array.toBits();
+                ((BitsChunk) _chunks[k]).add(low);
+            }
+        }
+    }
+
+    /** Return true iff X is a member of me. */
+    boolean contains(int x) {
+        int k = find((char) (x >>> 16));
+        if (k < 0) {
+            return false;
+        }
+        Object chunk = _chunks[k];
+        char low = (char) x;
+        if (chunk instanceof BitsChunk) {
+            return ((BitsChunk) chunk).contains(low);
+        }
+        ArrayChunk array = (ArrayChunk) chunk;
+        return Arrays.binarySearch(array.values, 0, array.size, low) >= 0;
+    }
+
+    /** Return my number of members. */
+    int cardinality() {
+        int n = 0;
+        for (int k = 0; k < _size; k += 1) {
+            n += cardinality(_chunks[k]);
+        }
+        return n;
+    }
+
+    /** Return my members, in increasing order. */
+    IntList toIntList() {
+        IntList result = new IntList();
+        for (int k = 0; k < _size; k += 1) {
+            int high = _keys[k] << 16;
+            Object chunk = _chunks[k];
+            if (chunk instanceof BitsChunk) {
+                long[] words = ((BitsChunk) chunk).words;
+                for (int w = 0; w < WORDS; w += 1) {
+                    long word = words[w];
+                    while (word != 0) {
+                        result.add(high | (w << 6)
+                                   | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                ArrayChunk array = (ArrayChunk) chunk;
+                for (int i = 0; i < array.size; i += 1) {
+                    result.add(high | array.values[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return my members that are less than N. */
+    Bitmap head(int n) {
+        Bitmap result = new Bitmap();
+        char last = (char) (n >>> 16);
+        for (int i = 0; i < _size && _keys[i] <= last; i += 1) {
+            if (_keys[i] < last) {
+                result.append(_keys[i], copy(_chunks[i]));
+            } else if ((n & 0xFFFF) != 0) {
+                Object chunk = and(_chunks[i], range(n & 0xFFFF)._chunks[0]);
+                if (cardinality(chunk) > 0) {
+                    result.append(_keys[i], chunk);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the intersection of me and OTHER. */
+    Bitmap and(Bitmap other) {
+        Bitmap result = new Bitmap();
+        int i = 0, j = 0;
+        while (i < _size && j < other._size) {
+            int c = _keys[i] - other._keys[j];
+            if (c < 0) {
+                i += 1;
+            } else if (c > 0) {
+                j += 1;
+            } else {
+                Object chunk = and(_chunks[i], other._chunks[j]);
+                if (cardinality(chunk) > 0) {
+                    result.append(_keys[i], chunk);
+                }
+                i += 1;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the union of me and OTHER. */
+    Bitmap or(Bitmap other) {
+        Bitmap result = new Bitmap();
+        int i = 0, j = 0;
+        while (i < _size || j < other._size) {
+            int c = i == _size ? 1 : j == other._size ? -1
+                : _keys[i] - other._keys[j];
+            if (c < 0) {
+                result.append(_keys[i], copy(_chunks[i]));
+                i += 1;
+            } else if (c > 0) {
+                result.append(other._keys[j], copy(other._chunks[j]));
+                j += 1;
+            } else {
+                result.append(_keys[i], or(_chunks[i], other._chunks[j]));
+                i += 1;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the members of me that are not members of OTHER. */
+    Bitmap andNot(Bitmap other) {
+        Bitmap result = new Bitmap();
+        int j = 0;
+        for (int i = 0; i < _size; i += 1) {
+            while (j < other._size && other._keys[j] < _keys[i]) {
+                j += 1;
+            }
+            Object chunk = j < other._size && other._keys[j] == _keys[i]
+                ? andNot(_chunks[i], other._chunks[j]) : copy(_chunks[i]);
+            if (cardinality(chunk) > 0) {
+                result.append(_keys[i], chunk);
+            }
+        }
+        return result;
+    }
+
+    /** Return the position of the chunk with key KEY, or -(p + 1) if
+     *  there is none and it would go at position p. */
+    private int find(char key) {
+        int lo = 0, hi = _size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_keys[mid] < key) {
+                lo = mid + 1;
+            } else if (_keys[mid] > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /** Add CHUNK, with key KEY, at position K of my chunks. */
+    private void insert(int k, char key, Object chunk) {
+        if (_size == _keys.length) {
+            _keys = Arrays.copyOf(_keys, 2 * _size);
+            _chunks = Arrays.copyOf(_chunks, 2 * _size);
+        }
+        System.arraycopy(_keys, k, _keys, k + 1, _size - k);
+        System.arraycopy(_chunks, k, _chunks, k + 1, _size - k);
+        _keys[k] = key;
+        _chunks[k] = chunk;
+        _size += 1;
+    }
+
+    /** Add CHUNK, whose key KEY exceeds those of all my chunks, as my
+     *  last chunk. */
+    private void append(char key, Object chunk) {
+        insert(_size, key, chunk);
+    }
+
+    /** Return the number of members of CHUNK. */
+    private static int cardinality(Object chunk) {
+        return chunk instanceof BitsChunk ? ((BitsChunk) chunk).cardinality
+            : ((ArrayChunk) chunk).size;
+    }
+
+    /** Return a copy of CHUNK. */
+    private static Object copy(Object chunk) {
+        if (chunk instanceof BitsChunk) {
+            BitsChunk bits = (BitsChunk) chunk;
+            return new BitsChunk(bits.words.clone(), bits.cardinality);
+        }
+        ArrayChunk array = (ArrayChunk) chunk;
+        return new ArrayChunk(Arrays.copyOf(array.values, array.size),
+                              array.size);
+    }
+
+    /** Return the intersection of chunks A and B. */
+    private static Object and(Object a, Object b) {
+        if (a instanceof BitsChunk && b instanceof BitsChunk) {
+            long[] x = ((BitsChunk) a).words, y = ((BitsChunk) b).words;
+            long[] words = new long[WORDS];
+            for (int w = 0; w < WORDS; w += 1) {
+                words[w] = x[w] & y[w];
+            }
+            return BitsChunk.make(words);
+        }
+        if (a instanceof BitsChunk) {
+            Object t = a;
+            a = b;
+            b = t;
+        }
+        ArrayChunk array = (ArrayChunk) a;
+        char[] values = new char[array.size];
+        int n = 0;
+        if (b instanceof BitsChunk) {
+            BitsChunk bits = (BitsChunk) b;
+            for (int i = 0; i < array.size; i += 1) {
+                if (bits.contains(array.values[i])) {
+                    values[n] = array.values[i];
+                    n += 1;
+                }
+            }
+        } else {
+            ArrayChunk other = (ArrayChunk) b;
+            for (int i = 0, j = 0; i < array.size && j < other.size;) {
+                int c = array.values[i] - other.values[j];
+                if (c == 0) {
+                    values[n] = array.values[i];
+                    n += 1;
+                }
+                if (c <= 0) {
+                    i += 1;
+                }
+                if (c >= 0) {
+                    j += 1;
+                }
+            }
+        }
+        return new ArrayChunk(values, n);
+    }
+
+    /** Return the union of chunks A and B. */
+    private static Object or(Object a, Object b) {
+        if (a instanceof ArrayChunk && b instanceof ArrayChunk) {
+            ArrayChunk x = (ArrayChunk) a, y = (ArrayChunk) b;
+            if (x.size + y.size <= ARRAY_MAX) {
+                char[] values = new char[x.size + y.size];
+                int i = 0, j = 0, n = 0;
+                while (i < x.size || j < y.size) {
+                    int c = i == x.size ? 1 : j == y.size ? -1
+                        : x.values[i] - y.values[j];
+                    if (c <= 0) {
+                        values[n] = x.values[i];
+                        i += 1;
+                        j += c == 0 ? 1 : 0;
+                    } else {
+                        values[n] = y.values[j];
+                        j += 1;
+                    }
+                    n += 1;
+                }
+                return new ArrayChunk(values, n);
+            }
+        }
+        long[] words = bits(a).words.clone();
+        if (b instanceof BitsChunk) {
+            long[] y = ((BitsChunk) b).words;
+            for (int w = 0; w < WORDS; w += 1) {
+                words[w] |= y[w];
+            }
+        } else {
+            ArrayChunk array = (ArrayChunk) b;
+            for (int i = 0; i < array.size; i += 1) {
+                words[array.values[i] >>> 6] |= 1L << array.values[i];
+            }
+        }
+        return BitsChunk.make(words);
+    }
+
+    /** Return the members of chunk A that are not in chunk B. */
+    private static Object andNot(Object a, Object b) {
+        if (a instanceof BitsChunk) {
+            long[] words = ((BitsChunk) a).words.clone();
+            if (b instanceof BitsChunk) {
+                long[] y = ((BitsChunk) b).words;
+                for (int w = 0; w < WORDS; w += 1) {
+                    words[w] &= ~y[w];
+                }
+            } else {
+                ArrayChunk array = (ArrayChunk) b;
+                for (int i = 0; i < array.size; i += 1) {
+                    words[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+                }
+            }
+            return BitsChunk.make(words);
+        }
+        ArrayChunk array = (ArrayChunk) a;
+        char[] values = new char[array.size];
+        int n = 0;
+        for (int i = 0; i < array.size; i += 1) {
+            char v = array.values[i];
+            boolean present = b instanceof BitsChunk
+                ? ((BitsChunk) b).contains(v)
+                : Arrays.binarySearch(((ArrayChunk) b).values, 0,
+                                      ((ArrayChunk) b).size, v) >= 0;
+            if (!present) {
+                values[n] = v;
+                n += 1;
+            }
+        }
+        return new ArrayChunk(values, n);
+    }
+
+    /** Return CHUNK as a bitset (not necessarily a copy). */
+    private static BitsChunk bits(Object chunk) {
+        return chunk instanceof BitsChunk ? (BitsChunk) chunk
+            : ((ArrayChunk) chunk).toBits();
+    }
+
+    /** A chunk held as a sorted array of the low bits of its members. */
+    private static class ArrayChunk {
+        /** A chunk whose members' low bits are VALUES[0 .. SIZE-1]. */
+        ArrayChunk(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        /** Add LOW, returning false (and doing nothing) if there is no
+         *  room for it. */
+        boolean add(char low) {
+            int i = size > 0 && values[size - 1] < low ? -(size + 1)
+                : Arrays.binarySearch(values, 0, size, low);
+            if (i >= 0) {
+                return true;
+            }
+            if (size == ARRAY_MAX) {
+                return false;
+            }
+            i = -i - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values,
+                                       Math.min(ARRAY_MAX,
+                                                Math.max(4, 2 * size)));
+            }
+            System.arraycopy(values, i, values, i + 1, size - i);
+            values[i] = low;
+            size += 1;
+            return true;
+        }
+
+        /** Return my members as a bitset. */
+        BitsChunk toBits() {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < size; i += 1) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new BitsChunk(words, size);
+        }
+
+        /** The low bits of my members, in increasing order. */
+        char[] values;
+        /** Number of my members. */
+        int size;
+    }
+
+    /** A chunk held as a bitset. */
+    private static class BitsChunk {
+        /** A chunk whose members are the set bits of WORDS, of which
+         *  there are CARDINALITY. */
+        BitsChunk(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /** Return the chunk whose members are the set bits of WORDS, as
+         *  an array if there are few enough of them. */
+        static Object make(long[] words) {
+            int n = 0;
+            for (long word : words) {
+                n += Long.bitCount(word);
+            }
+            if (n > ARRAY_MAX) {
+                return new BitsChunk(words, n);
+            }
+            char[] values = new char[n];
+            int i = 0;
+            for (int w = 0; w < WORDS; w += 1) {
+                long word = words[w];
+                while (word != 0) {
+                    values[i] = (char) ((w << 6)
+                                        | Long.numberOfTrailingZeros(word));
+                    i += 1;
+                    word &= word - 1;
+                }
+            }
+            return new ArrayChunk(values, n);
+        }
+
+        /** Return true iff LOW is a member. */
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        /** Add LOW. */
+        void add(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                cardinality += 1;
+            }
+        }
+
+        /** The bits of my members. */
+        final long[] words;
+        /** Number of my members. */
+        int cardinality;
+    }
+
+    /** The high 16 bits of the members of each of my chunks, in
+     *  increasing order. */
+    private char[] _keys;
+    /** My chunks: ArrayChunks and BitsChunks. */
+    private Object[] _chunks;
+    /** Number of my chunks. */
+    private int _size;
+}
@@ -0,0 +1,148 @@
+package db61b;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** A secondary index on one column of a Table that holds, for each
+ *  distinct value of the column, a Bitmap of the positions of the rows
+ *  containing it.  It suits columns with few distinct values, for which
+ *  an OrderedIndex would return long lists of positions: a condition
+ *  comparing the column with a literal becomes a union of the bitmaps
+ *  of the values satisfying it, and a conjunction of such conditions an
+ *  intersection of those unions less the bitmaps of values excluded by
+ *  != conditions, computed a word at a time (see Planner).  Values
+ *  compare as Conditions compare them (numerically for numeric
+ *  columns).
+ *  @author Yasaman Bahri
+ */
+class BitmapIndex {
+
+    /** An empty index named NAME on column number COLUMN, whose values
+     *  have type TYPE. */
+    BitmapIndex(String name, int column, ColumnType type) {
+        _name = name;
+        _column = column;
+        _type = type;
+        _bitmaps = new HashMap<String, Bitmap>();
+        _limit = Integer.MAX_VALUE;
+    }
+
+    /** A view of INDEX that covers only the rows at positions less than
+     *  LIMIT. */
+    private BitmapIndex(BitmapIndex index, int limit) {
+        _name = index._name;
+        _column = index._column;
+        _type = index._type;
+        _bitmaps = index._bitmaps;
+        _limit = limit;
+    }
+
+    /** Return a view of me that covers only the rows at positions less
+     *  than LIMIT, as for OrderedIndex.view.  Its lookups return
+     *  copies, since my bitmaps change as rows are added to me. */
+    BitmapIndex view(int limit) {
+        return new BitmapIndex(this, limit);
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return the number of the column I index. */
+    int column() {
+        return _column;
+    }
+
+    /** Return true iff my values compare as numbers. */
+    boolean numeric() {
+        return _type.isNumeric();
+    }
+
+    /** Return the number of distinct values in my column. */
+    int distinct() {
+        synchronized (_bitmaps) {
+            return _bitmaps.size();
+        }
+    }
+
+    /** Record that the row at POS has value VALUE (in canonical form) in
+     *  my column.  -0.0 is recorded as 0.0, to which it compares equal. */
+    void add(String value, int pos) {
+        if (value.equals("-0.0")) {
+            value = "0.0";
+        }
+        synchronized (_bitmaps) {
+            Bitmap rows = _bitmaps.get(value);
+            if (rows == null) {
+                rows = new Bitmap();
+                _bitmaps.put(value, rows);
+            }
+            rows.add(pos);
+        }
+    }
+
+    /** Return the positions of the rows whose value V satisfies
+     *  V REL VALUE, where REL is one of "=", "<", "<=", ">", or ">=".
+     *  The result must not be modified. */
+    Bitmap lookup(String rel, String value) {
+        synchronized (_bitmaps) {
+            switch (rel) {
+            case "=":
+                Bitmap rows = _bitmaps.get(key(value));
+                return rows == null ? new Bitmap()
+                    : _limit == Integer.MAX_VALUE ? rows : rows.head(_limit);
+            default:
+                Bitmap result = new Bitmap();
+                for (Map.Entry<String, Bitmap> entry
+                         : _bitmaps.entrySet()) {
+                    int c = compare(entry.getKey(), value);
+                    if ((rel.startsWith("<") ? c < 0 : c > 0)
+                        || c == 0 && rel.endsWith("=")) {
+                        result = result.or(entry.getValue());
+                    }
+                }
+                return _limit == Integer.MAX_VALUE ? result
+                    : result.head(_limit);
+            }
+        }
+    }
+
+    /** Return the key under which the rows whose values equal VALUE (as
+     *  Conditions compare them) are recorded, or null if no value of my
+     *  column can equal it, as for 7.5 in an int column. */
+    private String key(String value) {
+        if (!_type.isNumeric()) {
+            return value;
+        }
+        double x = ColumnType.parseDouble(value) + 0.0;
+        if (_type == ColumnType.DOUBLE) {
+            return Double.toString(x);
+        } else if (x != Math.rint(x) || x < Integer.MIN_VALUE
+                   || x > Integer.MAX_VALUE) {
+            return null;
+        }
+        return Integer.toString((int) x);
+    }
+
+    /** Return the result of comparing values A and B as my column's
+     *  values compare. */
+    private int compare(String a, String b) {
+        if (_type.isNumeric()) {
+            return Double.compare(ColumnType.parseDouble(a) + 0.0,
+                                  ColumnType.parseDouble(b) + 0.0);
+        }
+        return a.compareTo(b);
+    }
+
+    /** My name. */
+    private final String _name;
+    /** The number of the column I index. */
+    private final int _column;
+    /** The type of my column's values. */
+    private final ColumnType _type;
+    /** Maps each value in my column to the rows containing it. */
+    private final HashMap<String, Bitmap> _bitmaps;
+    /** I cover only rows at positions less than this. */
+    private final int _limit;
+}
@@ -0,0 +1,131 @@
+package db61b;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** The named tables of a database, which several CommandInterpreters may
+ *  share, using multiversion concurrency control.  Statements that
+ *  create, load, or modify tables run one at a time, holding my write
+ *  lock, and act on the tables themselves.  When such a statement
+ *  finishes, it commits: the state of every table is published as a
+ *  new version, an immutable map from names to read-only snapshots of
+ *  the tables (see Table.snapshot).  A statement that only reads tables
+ *  takes the latest version when it starts and reads it throughout,
+ *  without locking, so that it sees the database as of a single commit
+ *  no matter how long it runs, and neither waits for writers nor makes
+ *  them wait.
+ *
+ *  Since tables are only ever appended to, a version of a table is just
+ *  a prefix of its rows: a row's position serves as the version in which
+ *  it was created, and a snapshot holds the rows before the first
+ *  position that was not yet committed.
+ *
+ *  A catalog may keep a WriteAheadLog, from which it is rebuilt when
+ *  next opened.  Statements that change tables log their effects, and
+ *  sync the log before reporting that they are done.
+ *  @author Yasaman Bahri
+ */
+class Catalog {
+
+    /** A catalog of the tables in DATABASE, which maps names to
+     *  tables. */
+    Catalog(Map<String, Table> database) {
+        _tables = database;
+        _log = null;
+        commit();
+    }
+
+    /** An empty catalog. */
+    Catalog() {
+        this(new HashMap<String, Table>());
+    }
+
+    /** A catalog logging its changes to the file named LOG, containing
+     *  the tables recovered from LOG and its latest checkpoint.  The log
+     *  is checkpointed when it reaches CHECKPOINTSIZE bytes (see
+     *  WriteAheadLog). */
+    Catalog(String log, long checkpointSize) {
+        _tables = new HashMap<String, Table>();
+        _log = new WriteAheadLog(log, _tables, checkpointSize);
+        commit();
+    }
+
+    /** A catalog logging its changes to the file named LOG, as for
+     *  Catalog(LOG, WriteAheadLog.CHECKPOINT_SIZE). */
+    Catalog(String log) {
+        this(log, WriteAheadLog.CHECKPOINT_SIZE);
+    }
+
+    /** Return my tables, which may be modified.  Requires the write
+     *  lock. */
+    Map<String, Table> tables() {
+        return _tables;
+    }
+
+    /** Return the latest committed version of my tables.  The result
+     *  does not change, and may be used without locking. */
+    Map<String, Table> snapshot() {
+        return _snapshot;
+    }
+
+    /** Publish the current state of my tables as the latest version,
+     *  first checkpointing my log if it is full.  Requires the write
+     *  lock. */
+    void commit() {
+        if (_log != null && _log.full()) {
+            _log.checkpoint(_tables);
+        }
+        HashMap<String, Table> version = new HashMap<String, Table>();
+        for (Map.Entry<String, Table> entry : _tables.entrySet()) {
+            version.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        _snapshot = Collections.unmodifiableMap(version);
+    }
+
+    /** Return the lock held by statements that create or modify
+     *  tables. */
+    Lock writeLock() {
+        return _writeLock;
+    }
+
+    /** Log that TABLE has been created or loaded, and added to my
+     *  tables.  Returns the position in my log to be passed to sync, or
+     *  0 if I keep no log.  Requires the write lock. */
+    long created(Table table) {
+        return _log == null ? 0 : _log.created(table);
+    }
+
+    /** Log that the rows of TABLE from position FROM on have been added
+     *  to it, returning a position as for created. */
+    long added(Table table, int from) {
+        return _log == null ? 0 : _log.added(table, from);
+    }
+
+    /** Log that an index of kind KIND named NAME has been created on the
+     *  column of TABLE titled COLUMN, returning a position as for
+     *  created. */
+    long indexed(Table table, String name, String column, String kind) {
+        return _log == null ? 0 : _log.indexed(table, name, column, kind);
+    }
+
+    /** Make the changes logged before position LSN durable, or if LATER,
+     *  possibly leave them to be synced with later ones (see
+     *  WriteAheadLog.sync).  Does not require the write lock. */
+    void sync(long lsn, boolean later) {
+        if (_log != null) {
+            _log.sync(lsn, later);
+        }
+    }
+
+    /** Maps names to tables. */
+    private final Map<String, Table> _tables;
+    /** The latest committed version of _tables. */
+    private volatile Map<String, Table> _snapshot;
+    /** The log of changes to _tables, or null if they are not logged. */
+    private final WriteAheadLog _log;
+    /** Held while modifying _tables or the tables in it. */
+    private final Lock _writeLock = new ReentrantLock();
+}
@@ -59,11 +59,27 @@ class Column {
                 if (it.table() == _table) {
                     _rowSource = it;
                     _index = it.columnIndex(_columnName);
+                    _vector = _table.vector(_index);
+                    _dictionary = _table.dictionary(_index);
                     return;
                 }
             }
             throw error("%s is not being selected from", _table.name());
         }
+        _vector = _rowSource.table().vector(_index);
+        _dictionary = _rowSource.table().dictionary(_index);
+    }
+
+    /** Return a copy of me resolved to the member of TO at the position
+     *  in FROM of the TableIterator I am resolved to, so that a thread
+     *  using its own iterators (see Planner) can evaluate me. */
+    Column bound(List<TableIterator> from, List<TableIterator> to) {
+        Column result = new Column(_table, _columnName);
+        result._rowSource = to.get(from.indexOf(_rowSource));
+        result._index = _index;
+        result._vector = _vector;
+        result._dictionary = _dictionary;
+        return result;
     }
 
     /** Return my column value from the current row of my
@@ -73,6 +89,75 @@ class Column {
         return _rowSource.value(_index);
     }
 
+    /** Return the TableIterator I am attached to, or null if I am not
+     *  resolved (as is always true of a Literal). */
+    TableIterator source() {
+        return _rowSource;
+    }
+
+    /** Return the number of my column within the table of my
+     *  TableIterator.  This Column must be resolved. */
+    int index() {
+        return _index;
+    }
+
+    /** Return the type of my values.  This Column must be resolved. */
+    ColumnType type() {
+        return _rowSource.table().type(_index);
+    }
+
+    /** Return my column value from the current row of my TableIterator
+     *  as a number, without converting it to a String if my table keeps
+     *  my column as a vector.  This Column must be resolved, and type()
+     *  must be numeric. */
+    double number() {
+        if (_vector == null) {
+            return ColumnType.parseDouble(value());
+        }
+        return _vector.number(_rowSource.position());
+    }
+
+    /** Return my current value as a key for hashing or ordering: a
+     *  Double if NUMERIC (in which case type() must be numeric), and
+     *  otherwise a String.  Keys of the same kind compare (by
+     *  compareKeys) and hash consistently with Conditions. */
+    Object key(boolean numeric) {
+        if (numeric) {
+            double x = number();
+            return x == 0.0 ? 0.0 : x;
+        }
+        return value();
+    }
+
+    /** Return the result of comparing keys A and B, which must be both
+     *  Doubles or both Strings. */
+    static int compareKeys(Object a, Object b) {
+        if (a instanceof Double) {
+            return Double.compare((Double) a, (Double) b);
+        }
+        return ((String) a).compareTo((String) b);
+    }
+
+    /** Return the vector holding my column, or null if my table's
+     *  storage does not keep columns separately.  This Column must be
+     *  resolved. */
+    ColumnVector vector() {
+        return _vector;
+    }
+
+    /** Return the dictionary that encodes my column's values, or null if
+     *  they are not dictionary-encoded.  This Column must be resolved. */
+    DictionaryVector dictionary() {
+        return _dictionary;
+    }
+
+    /** Return the dictionary code of my column value in the current row
+     *  of my TableIterator.  This Column must be resolved and
+     *  dictionary() must be non-null. */
+    int code() {
+        return _dictionary.code(_rowSource.position());
+    }
+
     /** Column name denoted by THIS. */
     protected String _columnName;
     /** Index of the column from which to extract a value. */
@@ -81,4 +166,8 @@ class Column {
     private Table _table;
     /** Source for rows of the table. */
     private TableIterator _rowSource;
+    /** Vector holding my column, if my table's storage has them. */
+    private ColumnVector _vector;
+    /** Dictionary encoding my column, if any. */
+    private DictionaryVector _dictionary;
 }
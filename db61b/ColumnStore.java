@@ -0,0 +1,105 @@
+package db61b;
+
+/** A TableStore that keeps each column as a separate ColumnVector:
+ *  string columns are dictionary-encoded, so that a value repeated in
+ *  many rows is stored only once, and numeric columns are kept in
+ *  primitive arrays.  Rows are never materialized unless asked for.
+ *  @author Yasaman Bahri
+ */
+class ColumnStore implements TableStore {
+
+    /** An empty store of columns whose types are TYPES. */
+    ColumnStore(ColumnType[] types) {
+        _columns = new ColumnVector[types.length];
+        for (int i = 0; i < types.length; i += 1) {
+            _columns[i] = ColumnVector.create(types[i]);
+        }
+        _readOnly = false;
+    }
+
+    /** A read-only store of SIZE rows whose columns are COLUMNS. */
+    private ColumnStore(ColumnVector[] columns, int size) {
+        _columns = columns;
+        _size = size;
+        _readOnly = true;
+    }
+
+    @Override
+    public ColumnVector column(int k) {
+        return _columns[k];
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public String get(int row, int col) {
+        return _columns[col].value(row);
+    }
+
+    @Override
+    public Row row(int k) {
+        String[] data = new String[_columns.length];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = _columns[i].value(k);
+        }
+        return new Row(data);
+    }
+
+    @Override
+    public void add(Row row) {
+        for (int i = 0; i < _columns.length; i += 1) {
+            _columns[i].add(row.get(i));
+        }
+        _size += 1;
+    }
+
+    @Override
+    public void reserve(int n) {
+        for (ColumnVector column : _columns) {
+            column.reserve(n);
+        }
+    }
+
+    @Override
+    public int hash(int k) {
+        int h = 1;
+        for (ColumnVector column : _columns) {
+            h = 31 * h + column.value(k).hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public boolean rowEquals(int k, Row row) {
+        for (int i = 0; i < _columns.length; i += 1) {
+            if (!_columns[i].matches(k, row.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean readOnly() {
+        return _readOnly;
+    }
+
+    @Override
+    public TableStore snapshot() {
+        ColumnVector[] columns = new ColumnVector[_columns.length];
+        for (int i = 0; i < columns.length; i += 1) {
+            columns[i] = _columns[i].snapshot();
+        }
+        return new ColumnStore(columns, _size);
+    }
+
+    /** My columns. */
+    private final ColumnVector[] _columns;
+    /** Number of rows stored. */
+    private int _size;
+    /** True iff I am a snapshot, which may not be added to. */
+    private final boolean _readOnly;
+}
@@ -0,0 +1,77 @@
+package db61b;
+
+import static db61b.Utils.*;
+
+/** The types a table column may be declared to have.  Values of every
+ *  type are presented as strings; numeric columns are stored as
+ *  primitives, compared numerically, and print in a canonical form
+ *  (so '007' in an int column becomes '7').
+ *  @author Yasaman Bahri
+ */
+enum ColumnType {
+    /** Arbitrary strings, compared lexicographically (the default). */
+    STRING,
+    /** 32-bit integers. */
+    INT,
+    /** Double-precision floating-point numbers. */
+    DOUBLE;
+
+    /** Return true iff my values are numbers. */
+    boolean isNumeric() {
+        return this != STRING;
+    }
+
+    /** Return the canonical form of VALUE as a value of my type, throwing
+     *  a DBException if it is not one. */
+    String canonical(String value) {
+        switch (this) {
+        case INT:
+            return Integer.toString(parseInt(value));
+        case DOUBLE:
+            return Double.toString(parseDouble(value));
+        default:
+            return value;
+        }
+    }
+
+    /** Return X, which must be a value of my type, in canonical form.
+     *  I must be numeric. */
+    String format(double x) {
+        return this == INT ? Integer.toString((int) x) : Double.toString(x);
+    }
+
+    /** Return the name of this type as written in table definitions. */
+    String title() {
+        return name().toLowerCase();
+    }
+
+    /** Return the type named NAME in a table definition. */
+    static ColumnType parse(String name) {
+        for (ColumnType type : values()) {
+            if (type.title().equals(name)) {
+                return type;
+            }
+        }
+        throw error("unknown column type: %s", name);
+    }
+
+    /** Return VALUE as an int, throwing a DBException if it is not
+     *  one. */
+    static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw error("not an int: '%s'", value);
+        }
+    }
+
+    /** Return VALUE as a double, throwing a DBException if it is not a
+     *  number. */
+    static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw error("not a number: '%s'", value);
+        }
+    }
+}
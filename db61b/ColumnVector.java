@@ -0,0 +1,54 @@
+package db61b;
+
+/** The values of one column of a table, stored together.
+ *  @author Yasaman Bahri
+ */
+abstract class ColumnVector {
+
+    /** Return a new, empty vector for values of type TYPE. */
+    static ColumnVector create(ColumnType type) {
+        switch (type) {
+        case INT:
+            return new IntVector();
+        case DOUBLE:
+            return new DoubleVector();
+        default:
+            return new DictionaryVector();
+        }
+    }
+
+    /** Return the number of values stored. */
+    abstract int size();
+
+    /** Return the value in row K. */
+    abstract String value(int k);
+
+    /** Return the value in row K as a number.  Only numeric vectors
+     *  support this. */
+    double number(int k) {
+        throw new UnsupportedOperationException("not a numeric column");
+    }
+
+    /** Append VALUE, which must be in canonical form for my type. */
+    abstract void add(String value);
+
+    /** Make room for at least N more values. */
+    abstract void reserve(int n);
+
+    /** Return a vector holding my current values that shares my storage
+     *  and is not changed by values added to me later (see
+     *  TableStore.snapshot).  Values must not be added to it. */
+    abstract ColumnVector snapshot();
+
+    /** Return true iff row K holds VALUE, which is in canonical form for
+     *  my type. */
+    boolean matches(int k, String value) {
+        return value(k).equals(value);
+    }
+
+    /** Return the capacity to grow an array of OLDLENGTH elements to in
+     *  order to hold NEEDED elements, doubling it if that suffices. */
+    static int grown(int oldLength, int needed) {
+        return Math.max(needed, 2 * oldLength);
+    }
+}
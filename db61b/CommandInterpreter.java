@@ -1,11 +1,12 @@
 package db61b;
 
 import java.io.PrintStream;
+import java.io.Reader;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.locks.Lock;
 
 import static db61b.Utils.*;
 import static db61b.Tokenizer.*;
@@ -27,7 +28,7 @@ class CommandInterpreter {
      * symbols such as ";", ",", ">="; and other names (of columns or tables).
      * All whitespace and comments get discarded in this process, so that the
      * rest of the program can deal just with things mentioned in the BNF.
-     * The class Tokenizer performs this breaking-up task, known as
+     * The class Lexer performs this breaking-up task, known as
      * "tokenizing" or "lexical analysis."
      *
      * The rest of the parser consists of a set of functions that call each
@@ -63,7 +64,7 @@ class CommandInterpreter {
      *    _input.next(";");
      *
      * plus other code that operates on name and table to perform the function
-     * of the create statement.  The .next method of Tokenizer is set up to
+     * of the create statement.  The .next method of Lexer is set up to
      * throw an exception (DBException) if the next token does not match its
      * argument.  Thus, any syntax error will cause an exception, which your
      * program can catch to do error reporting.
@@ -119,14 +120,70 @@ class CommandInterpreter {
      *  prompts on PROMPTER, if it is non-null, and using DATABASE
      *  to map names of tables to corresponding Tables. */
     CommandInterpreter(Map<String, Table> database,
-                       Scanner inp, PrintStream prompter) {
-        _input = new Tokenizer(inp, prompter);
-        _database = database;
+                       Reader inp, PrintStream prompter) {
+        this(new Catalog(database), inp, prompter, System.out);
+    }
+
+    /** A new CommandParser executing commands read from INP, writing
+     *  prompts on PROMPTER, if it is non-null, and output on OUTPUT, and
+     *  using the tables in CATALOG, which other CommandParsers may share
+     *  (see Catalog). */
+    CommandInterpreter(Catalog catalog, Reader inp, PrintStream prompter,
+                       PrintStream output) {
+        _input = new Lexer(inp, prompter);
+        _database = catalog;
+        _output = output;
     }
 
     /** Parse and execute one statement from the token stream.  Return true
-     *  iff the command is something other than quit or exit. */
+     *  iff the command is something other than quit or exit.  A
+     *  statement that creates or modifies tables runs holding my
+     *  catalog's write lock, logs its effects, and commits its changes
+     *  when done; any other reads the catalog's latest committed version
+     *  (see Catalog).  The changes logged are synced before my input is
+     *  exhausted, so that statements already waiting to be read share
+     *  one sync with this one (group commit), and any client waiting
+     *  for a reply first finds them durable. */
     boolean statement() {
+        boolean more = false;
+        _terminated = false;
+        try {
+            switch (_input.peek()) {
+            case "create": case "import": case "insert": case "load":
+                Lock lock = _database.writeLock();
+                lock.lock();
+                try {
+                    _tables = _database.tables();
+                    more = execute();
+                } finally {
+                    try {
+                        _database.commit();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                break;
+            default:
+                _tables = _database.snapshot();
+                more = execute();
+                break;
+            }
+            return more;
+        } finally {
+            _database.sync(_lsn, more && _input.ready());
+        }
+    }
+
+    /** Read ahead through the end of the next statement, so that
+     *  statement will not wait for input while holding a lock (see
+     *  Lexer.readStatement). */
+    void readStatement() {
+        _input.readStatement();
+    }
+
+    /** Parse and execute one statement from the token stream, as for
+     *  statement. */
+    private boolean execute() {
         switch (_input.peek()) {
         case "create":
             createStatement();
@@ -139,6 +196,9 @@ class CommandInterpreter {
             return false;
         case "*EOF*":
             return false;
+        case "import":
+            importStatement();
+            break;
         case "insert":
             insertStatement();
             break;
@@ -148,6 +208,9 @@ class CommandInterpreter {
         case "select":
             selectStatement();
             break;
+        case "set":
+            setStatement();
+            break;
         case "store":
             storeStatement();
             break;
@@ -160,13 +223,43 @@ class CommandInterpreter {
     /** Parse and execute a create statement from the token stream. */
     private void createStatement() {
         _input.next("create");
+        if (_input.nextIs("index")) {
+            createIndexStatement();
+            return;
+        }
         _input.next("table");
         String name = name();
-        Table table = tableDefinition(name);
-        if (_database.containsKey(name)) {
-            _database.remove(name);
+        String storage = storageClause();
+        Table table = tableDefinition(name, storage);
+        _tables.put(name, table);
+        _lsn = _database.created(table);
+    }
+
+    /** Parse and execute the remainder of a create index statement
+     *  ("index <name> on <table> ( <column> ) [using <kind>] ;") from
+     *  the token stream.  The kind is "ordered" (the default), for an
+     *  OrderedIndex, or "bitmap", for a BitmapIndex. */
+    private void createIndexStatement() {
+        _input.next("index");
+        String name = name();
+        _input.next("on");
+        Table table = tableName();
+        _input.next("(");
+        String column = name();
+        _input.next(")");
+        String kind = _input.nextIf("using") ? name() : "ordered";
+        switch (kind) {
+        case "ordered":
+            table.createIndex(name, column);
+            break;
+        case "bitmap":
+            table.createBitmapIndex(name, column);
+            break;
+        default:
+            throw error("unknown index kind: %s", kind);
         }
-        _database.put(name, table);
+        _lsn = _database.indexed(table, name, column, kind);
+        _input.next(";");
     }
 
     /** Parse and execute an exit or quit statement. Actually does nothing
@@ -176,42 +269,168 @@ class CommandInterpreter {
             _input.next("exit");
         }
         _input.next(";");
-        System.out.println();
+        _output.println();
     }
 
-    /** Parse and execute an insert statement from the token stream. */
+    /** Parse and execute an insert statement from the token stream.
+     *  The values are either a single row of literals separated by
+     *  commas, or one or more parenthesized rows separated by commas
+     *  ("values ('a', 'b'), ('c', 'd')").  The rows are added together
+     *  once the whole statement has been parsed, as by Table.addAll. */
     private void insertStatement() {
         _input.next("insert");
         _input.next("into");
         Table table = tableName();
         _input.next("values");
+        List<Row> rows = new ArrayList<Row>();
+        if (_input.nextIs("(")) {
+            do {
+                _input.next("(");
+                rows.add(valueList());
+                _input.next(")");
+            } while (_input.nextIf(","));
+        } else {
+            rows.add(valueList());
+        }
+        int from = table.size();
+        table.addAll(rows);
+        _lsn = _database.added(table, from);
+        _input.next(";");
+    }
+
+    /** Parse a list of literals separated by commas and return them as
+     *  a Row. */
+    private Row valueList() {
         ArrayList<String> values = new ArrayList<>();
         values.add(literal());
         while (_input.nextIf(",")) {
             values.add(literal());
         }
-        table.add(new Row(values.toArray(new String[values.size()])));
+        return new Row(values.toArray(new String[values.size()]));
+    }
+
+    /** Parse and execute an import statement ("import <table> from
+     *  <literal> ;") from the token stream, appending the rows of the
+     *  text-format file named by the literal to the table (see
+     *  Table.importFile). */
+    private void importStatement() {
+        _input.next("import");
+        Table table = tableName();
+        _input.next("from");
+        String file = literal();
+        int from = table.size();
+        int added;
+        try {
+            added = table.importFile(file);
+        } finally {
+            _lsn = _database.added(table, from);
+        }
         _input.next(";");
+        _output.printf("Imported %d rows into %s%n", added, table.name());
     }
 
     /** Parse and execute a load statement from the token stream. */
     private void loadStatement() {
         _input.next("load");
         String tabName = _input.next();
-        _database.put(tabName, Table.readTable(tabName));
+        String storage = storageClause();
+        Table table = Table.readTable(tabName, storage);
+        _tables.put(tabName, table);
+        _lsn = _database.created(table);
         _input.next(";");
-        System.out.println("Loaded " + tabName + ".db");
+        _output.println("Loaded " + tabName + ".db");
 
     }
 
-    /** Parse and execute a store statement from the token stream. */
+    /** Parse and execute a store statement from the token stream.  An
+     *  optional "using text" or "using binary" selects the file format;
+     *  text (the .db format) is the default. */
     private void storeStatement() {
         _input.next("store");
         String name = _input.peek();
         Table table = tableName();
-        table.writeTable(name);
+        String format = "text";
+        if (_input.nextIf("using")) {
+            format = name();
+        }
+        switch (format) {
+        case "text":
+            table.writeTable(name);
+            break;
+        case "binary":
+            table.writeBinaryTable(name);
+            break;
+        default:
+            throw error("unknown file format: %s", format);
+        }
         _input.next(";");
-        System.out.println("Stored " + table.name() + ".db");
+        _output.println("Stored " + table.name() + ".db");
+    }
+
+    /** Parse and execute a set statement ("set <name> = <literal> ;"),
+     *  which changes the setting NAME, from the token stream.  The
+     *  settings are
+     *      parallelism: the maximum number of threads a select uses;
+     *      sort_memory: the approximate number of bytes of rows (or
+     *          groups) that an order by (or group by) clause holds in
+     *          memory before writing them to temporary files (a number
+     *          optionally followed by k, m, or g). */
+    private void setStatement() {
+        _input.next("set");
+        String name = name();
+        _input.next("=");
+        String value = literal();
+        switch (name) {
+        case "parallelism":
+            _parallelism = positive(name, value);
+            break;
+        case "sort_memory":
+            _sortMemory = size(name, value);
+            break;
+        default:
+            throw error("unknown setting: %s", name);
+        }
+        _input.next(";");
+    }
+
+    /** Return VALUE, the new value of setting NAME, as a positive
+     *  integer. */
+    private static int positive(String name, String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            /* Fall through */
+        }
+        throw error("%s must be a positive integer", name);
+    }
+
+    /** Return VALUE, the new value of setting NAME, as a positive number
+     *  of bytes: a number optionally followed by k, m, or g. */
+    private static long size(String name, String value) {
+        String digits = value.toLowerCase();
+        int shift = 0;
+        if (digits.endsWith("k")) {
+            shift = 10;
+        } else if (digits.endsWith("m")) {
+            shift = 20;
+        } else if (digits.endsWith("g")) {
+            shift = 30;
+        }
+        if (shift > 0) {
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        try {
+            long result = Long.parseLong(digits);
+            if (result > 0 && result <= Long.MAX_VALUE >> shift) {
+                return result << shift;
+            }
+        } catch (NumberFormatException e) {
+            /* Fall through */
+        }
+        throw error("%s must be a positive size", name);
     }
 
     /** Parse and execute a print statement from the token stream. */
@@ -219,60 +438,143 @@ class CommandInterpreter {
         _input.next("print");
         Table table = tableName();
         _input.next(";");
-        System.out.println("Contents of " + table.name() + ":");
-        table.print();
+        _output.println("Contents of " + table.name() + ":");
+        table.print(_output);
     }
 
-    /** Parse and execute a select statement from the token stream. */
+    /** Parse and execute a select statement from the token stream.  The
+     *  rows are printed as they are produced, once the first has been
+     *  (so that a select that fails before producing any, as one that
+     *  aggregates or sorts may, prints nothing). */
     private void selectStatement() {
         _input.next("select");
-        String tableName;
-        tableName = "dummy";
-        Table result = selectClause(tableName);
-        System.out.println("Search results:");
-        result.print();
+        Select select = select("dummy", TableStore.ROWS);
+        try {
+            boolean more = select.rows.next();
+            _output.println("Search results:");
+            while (more) {
+                Table.print(select.rows.row(), _output);
+                more = select.rows.next();
+            }
+        } finally {
+            select.rows.close();
+        }
+    }
+
+    /** Parse an optional storage clause ("using <name>") and return the
+     *  storage mode it names, or the default mode if it is absent. */
+    String storageClause() {
+        if (_input.nextIf("using")) {
+            return name();
+        }
+        return TableStore.ROWS;
     }
 
     /** Parse and execute a table definition for a Table named NAME,
-     *  returning the specified table. */
-    Table tableDefinition(String name) {
+     *  returning the specified table, whose rows are stored as STORAGE. */
+    Table tableDefinition(String name, String storage) {
         if (_input.nextIs("(")) {
             _input.next();
             List<String> newColNames = new ArrayList<String>();
+            List<ColumnType> types = new ArrayList<ColumnType>();
             newColNames.add(name());
+            types.add(columnType());
             while (_input.nextIs(",")) {
                 _input.next();
                 newColNames.add(name());
+                types.add(columnType());
             }
             _input.next(")");
             _input.next(";");
-            return new Table(name, newColNames);
+            return new Table(name, newColNames, types, storage);
         } else if (_input.nextIs("as")) {
             _input.next();
             _input.next("select");
-            return selectClause(name);
+            return selectClause(name, storage);
         } else {
             throw new DBException();
         }
     }
 
+    /** Parse an optional column type following a column name in a table
+     *  definition, returning STRING if it is absent. */
+    ColumnType columnType() {
+        if (_input.nextIs(Tokenizer.IDENTIFIER)) {
+            return ColumnType.parse(name());
+        }
+        return ColumnType.STRING;
+    }
+
     /** Parse and execute a select clause from the token stream, returning the
      *  resulting table, with name TABLENAME. */
     Table selectClause(String tableName) {
+        return selectClause(tableName, TableStore.ROWS);
+    }
+
+    /** Parse and execute a select clause from the token stream, returning the
+     *  resulting table, with name TABLENAME, stored as STORAGE. */
+    Table selectClause(String tableName, String storage) {
+        Select select = select(tableName, storage);
+        try {
+            while (select.rows.next()) {
+                if (!select.added) {
+                    select.table.add(select.rows.row());
+                }
+            }
+        } finally {
+            select.rows.close();
+        }
+        return select.table;
+    }
+
+    /** A parsed select clause. */
+    private static class Select {
+        /** The table that is to hold the result, initially empty. */
+        Table table;
+        /** The rows of the result, without duplicates. */
+        RowSource rows;
+        /** True iff ROWS adds each row to TABLE as it produces it. */
+        boolean added;
+    }
+
+    /** Parse a select clause from the token stream, returning the empty
+     *  table named TABLENAME, stored as STORAGE, that describes its result
+     *  and the (unevaluated) stream of its rows.  Unless the clause has
+     *  an order by, the rows are added to the table as they are
+     *  produced. */
+    private Select select(String tableName, String storage) {
         ArrayList<Column> cols = new ArrayList<Column>();
+        List<Aggregate.Function> functions =
+            new ArrayList<Aggregate.Function>();
+        List<Column> args = new ArrayList<Column>();
         boolean loop = true;
         List<String> replaceNames = new ArrayList<String>();
         List<Integer> locations = new ArrayList<Integer>();
         int counter = 0;
         while (loop) {
             loop = false;
-            Column currCol = columnSelector();
+            String holder = name();
+            Aggregate.Function function = _input.nextIs("(")
+                ? Aggregate.Function.named(holder) : null;
+            Column currCol = null, arg = null;
+            if (function != null) {
+                _input.next("(");
+                if (function != Aggregate.Function.COUNT
+                    || !_input.nextIf("*")) {
+                    arg = columnSelector();
+                }
+                _input.next(")");
+            } else {
+                currCol = columnSelector(holder);
+            }
             if (_input.nextIs("as")) {
                 _input.next();
                 replaceNames.add(name());
                 locations.add(counter);
             }
             cols.add(currCol);
+            functions.add(function);
+            args.add(arg);
             if (_input.nextIf(",")) {
                 loop = true;
                 counter = counter + 1;
@@ -289,26 +591,215 @@ class CommandInterpreter {
         for (int i = 0; i < tableList.size(); i++) {
             iterList.add(tableList.get(i).tableIterator());
         }
-        for (int j = 0; j < cols.size(); j++) {
-            cols.get(j).resolve(iterList);
-        }
+        boolean grouped = false;
         List<String> columnTitles = new ArrayList<String>();
+        List<ColumnType> columnTypes = new ArrayList<ColumnType>();
         for (int i = 0; i < cols.size(); i++) {
-            columnTitles.add(cols.get(i).name());
+            Aggregate.Function function = functions.get(i);
+            Column arg = args.get(i);
+            if (function == null) {
+                cols.get(i).resolve(iterList);
+                columnTitles.add(cols.get(i).name());
+                columnTypes.add(cols.get(i).type());
+            } else if (arg == null) {
+                grouped = true;
+                columnTitles.add(function.title());
+                columnTypes.add(ColumnType.INT);
+            } else {
+                grouped = true;
+                arg.resolve(iterList);
+                if ((function == Aggregate.Function.SUM
+                     || function == Aggregate.Function.AVG)
+                    && !arg.type().isNumeric()) {
+                    throw error("cannot apply %s to non-numeric column %s",
+                                function.title(), arg.name());
+                }
+                columnTitles.add(function.title() + "_" + arg.name());
+                columnTypes.add(function.type(arg.type()));
+            }
         }
         if (!replaceNames.isEmpty()) {
             for (int i = 0; i < locations.size(); i++) {
                 columnTitles.set(locations.get(i), replaceNames.get(i));
             }
         }
-        Table resultTab = new Table(tableName, columnTitles);
+        Table resultTab =
+            new Table(tableName, columnTitles, columnTypes, storage);
         List<Condition> condList = new ArrayList<Condition>();
         if (_input.nextIs("where")) {
             condList = conditionClause(iterList);
         }
+        List<Column> keys = new ArrayList<Column>();
+        if (_input.nextIs("group")) {
+            keys = groupClause(iterList);
+            grouped = true;
+        }
+        Sort.Order order = null;
+        if (_input.nextIs("order")) {
+            order = orderClause(resultTab, cols, iterList);
+        }
+        long limit = -1;
+        if (_input.nextIs("limit")) {
+            limit = limitClause();
+        }
+        Select result = new Select();
+        result.table = resultTab;
+        int parallelism =
+            limit >= 0 && order == null && !grouped ? 1 : _parallelism;
+        Planner planner = new Planner(iterList, condList, parallelism);
+        RowSource rows = grouped ? aggregate(planner, cols, functions, args,
+                                             keys)
+            : planner.rows(cols);
+        if (order != null) {
+            result.rows = new Sort(rows, order, _sortMemory, true, limit);
+        } else {
+            result.rows = new Distinct(rows, resultTab);
+            result.added = true;
+            if (limit >= 0) {
+                result.rows = new Limit(result.rows, limit);
+            }
+        }
         _input.next(";");
-        select(resultTab, cols, iterList, condList);
-        return resultTab;
+        _terminated = true;
+        return result;
+    }
+
+    /** Parse a group by clause ("group by <column>, ...") of a select
+     *  whose tables are iterated by ITERATORS, and return its columns. */
+    private List<Column> groupClause(List<TableIterator> iterators) {
+        _input.next("group");
+        _input.next("by");
+        List<Column> keys = new ArrayList<Column>();
+        do {
+            keys.add(columnSelector(iterators));
+        } while (_input.nextIf(","));
+        return keys;
+    }
+
+    /** Return the rows of a select with aggregates or a group by clause,
+     *  grouping the combinations of rows produced by PLANNER by the
+     *  values of KEYS.  Item I of the select is the column COLUMNS[I], or,
+     *  if that is null, FUNCTIONS[I] applied to the column ARGS[I] (or to
+     *  whole rows, if that is null too).  Each column must be among the
+     *  KEYS. */
+    private RowSource aggregate(Planner planner, List<Column> columns,
+                                List<Aggregate.Function> functions,
+                                List<Column> args, List<Column> keys) {
+        List<Column> inputs = new ArrayList<Column>(keys);
+        List<Aggregate.Function> aggregates =
+            new ArrayList<Aggregate.Function>();
+        IntList aggregateArgs = new IntList();
+        int[] output = new int[columns.size()];
+        for (int i = 0; i < columns.size(); i += 1) {
+            Column col = columns.get(i);
+            if (col != null) {
+                output[i] = find(col, keys);
+                if (output[i] < 0) {
+                    throw error("%s must be grouped or aggregated",
+                                col.name());
+                }
+            } else {
+                output[i] = keys.size() + aggregates.size();
+                aggregates.add(functions.get(i));
+                if (args.get(i) == null) {
+                    aggregateArgs.add(-1);
+                } else {
+                    aggregateArgs.add(inputs.size());
+                    inputs.add(args.get(i));
+                }
+            }
+        }
+        ColumnType[] types = new ColumnType[inputs.size()];
+        for (int k = 0; k < types.length; k += 1) {
+            types[k] = inputs.get(k).type();
+        }
+        int[] argArray = new int[aggregateArgs.size()];
+        for (int j = 0; j < argArray.length; j += 1) {
+            argArray[j] = aggregateArgs.get(j);
+        }
+        return new Aggregate(planner.rows(inputs), types, keys.size(),
+                             aggregates.toArray(new Aggregate.Function[0]),
+                             argArray, output, _sortMemory);
+    }
+
+    /** Return the position in COLUMNS of a column that denotes the same
+     *  column of the same table as COL, or -1 if there is none.  All
+     *  must be resolved. */
+    private static int find(Column col, List<Column> columns) {
+        for (int k = 0; k < columns.size(); k += 1) {
+            Column other = columns.get(k);
+            if (other != null && other.source() == col.source()
+                && other.index() == col.index()) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** Parse a limit clause ("limit <number>") and return the maximum
+     *  number of rows it allows. */
+    private long limitClause() {
+        _input.next("limit");
+        String count = _input.next(NUMBER);
+        try {
+            return Long.parseLong(count);
+        } catch (NumberFormatException e) {
+            throw error("limit too large: %s", count);
+        }
+    }
+
+    /** Parse an order by clause ("order by <column> [asc|desc], ...")
+     *  of a select whose result is RESULT, whose columns are COLUMNS,
+     *  and whose tables are iterated by ITERATORS.  Return the order on
+     *  rows of RESULT that it specifies. */
+    private Sort.Order orderClause(Table result, List<Column> columns,
+                                   List<TableIterator> iterators) {
+        _input.next("order");
+        _input.next("by");
+        IntList keys = new IntList();
+        List<Boolean> descending = new ArrayList<Boolean>();
+        do {
+            keys.add(orderColumn(result, columns, iterators));
+            if (_input.nextIf("desc")) {
+                descending.add(true);
+            } else {
+                _input.nextIf("asc");
+                descending.add(false);
+            }
+        } while (_input.nextIf(","));
+        int[] keyColumns = new int[keys.size()];
+        boolean[] numeric = new boolean[keys.size()];
+        boolean[] desc = new boolean[keys.size()];
+        for (int i = 0; i < keys.size(); i += 1) {
+            keyColumns[i] = keys.get(i);
+            numeric[i] = result.type(keys.get(i)) != ColumnType.STRING;
+            desc[i] = descending.get(i);
+        }
+        return Sort.order(keyColumns, numeric, desc);
+    }
+
+    /** Parse a column designator in an order by clause and return the
+     *  number of the column of RESULT, whose columns are COLUMNS, that it
+     *  denotes.  An unqualified name denotes the column of RESULT with
+     *  that title, if any, so that names given by "as" may be used;
+     *  otherwise, the designator is resolved against ITERATORS and must
+     *  denote a selected column. */
+    private int orderColumn(Table result, List<Column> columns,
+                            List<TableIterator> iterators) {
+        String title = _input.peek();
+        if (_tables.get(title) == null) {
+            int k = result.columnIndex(title);
+            if (k >= 0) {
+                _input.next();
+                return k;
+            }
+        }
+        Column col = columnSelector(iterators);
+        int k = find(col, columns);
+        if (k < 0) {
+            throw error("%s is not a selected column", col.name());
+        }
+        return k;
     }
 
     /** Parse and return a valid name (identifier) from the token stream.
@@ -320,7 +811,13 @@ class CommandInterpreter {
     /** Parse valid column designation (name or table.name), and
      *  return as an unresolved Column. */
     Column columnSelector() {
-        String holder = name();
+        return columnSelector(name());
+    }
+
+    /** Parse the rest of a column designation (name or table.name) whose
+     *  first name, HOLDER, has already been read, and return it as an
+     *  unresolved Column. */
+    Column columnSelector(String holder) {
         Table thisTab = null;
         boolean unqualified = false;
         try {
@@ -350,7 +847,7 @@ class CommandInterpreter {
      *  that it designates, which must be loaded. */
     Table tableName() {
         String name = name();
-        Table table = _database.get(name);
+        Table table = _tables.get(name);
         if (table == null) {
             throw error("unknown table: %s", name);
         }
@@ -360,7 +857,7 @@ class CommandInterpreter {
     /** Parse a valid table name from the token stream, and return the Table
      *  that it designates, which must be loaded. Use string NAME for name. */
     Table tableName(String name) {
-        Table table = _database.get(name);
+        Table table = _tables.get(name);
         if (table == null) {
             throw error("unknown table: %s", name);
         }
@@ -414,36 +911,14 @@ class CommandInterpreter {
         return returnCond;
     }
 
-    /** Fill TABLE with the result of selecting COLUMNS from the rows returned
-     *  by ITERATORS that satisfy CONDITIONS.  ITERATORS must have size 1 or 2.
-     *  All selected Columns and all Columns mentioned in CONDITIONS must be
-     *  resolved to iterators listed among ITERATORS.  The number of
-     *  COLUMNS must equal TABLE.columns(). */
-    private void select(Table table, ArrayList<Column> columns,
-                        List<TableIterator> iterators,
-                        List<Condition> conditions) {
-        TableIterator iter1 = iterators.get(0);
-        while (iter1.hasRow()) {
-            if (iterators.size() > 1) {
-                TableIterator iter2 = iterators.get(1);
-                while (iter2.hasRow()) {
-                    if (Condition.test(conditions)) {
-                        table.add(Row.make(columns));
-                    }
-                    iter2.next();
-                }
-                iter2.reset();
-            } else {
-                if (Condition.test(conditions)) {
-                    table.add(Row.make(columns));
-                }
-            }
-            iter1.next();
-        }
-    }
-
-    /** Advance the input past the next semicolon. */
+    /** Advance the input past the next semicolon, unless the statement
+     *  last executed failed after reading its own (as a select may while
+     *  producing its rows). */
     void skipCommand() {
+        if (_terminated) {
+            _terminated = false;
+            return;
+        }
         while (true) {
             try {
                 while (!_input.nextIf(";") && !_input.nextIf("*EOF*")) {
@@ -457,7 +932,22 @@ class CommandInterpreter {
     }
 
     /** The command input source. */
-    private Tokenizer _input;
+    private Lexer _input;
     /** Database containing all tables. */
-    private Map<String, Table> _database;
+    private Catalog _database;
+    /** The tables used by the current statement: my catalog's tables,
+     *  or a version of them. */
+    private Map<String, Table> _tables;
+    /** Output for the results of statements. */
+    private PrintStream _output;
+    /** True iff the statement being executed has read its terminating
+     *  semicolon. */
+    private boolean _terminated;
+    /** The position in my catalog's log just past the changes last
+     *  logged by my statements (see Catalog.sync). */
+    private long _lsn;
+    /** Maximum number of threads used by a select. */
+    private int _parallelism = Runtime.getRuntime().availableProcessors();
+    /** Approximate number of bytes of rows held in memory by a sort. */
+    private long _sortMemory = Runtime.getRuntime().maxMemory() / 4;
 }
@@ -1,7 +1,9 @@
 package db61b;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Arrays;
+import java.util.function.BooleanSupplier;
 
 /** Represents a single 'where' condition in a 'select' command.
  *  @author Yasaman Bahri  */
@@ -15,7 +17,8 @@ class Condition {
 
     /** A Condition representing COL1 RELATION COL2, where COL1 and COL2
      *  are column designators. and RELATION is one of the
-     *  strings "<", ">", "<=", ">=", "=", or "!=". */
+     *  strings "<", ">", "<=", ">=", "=", or "!=".  COL1 and COL2 must
+     *  already be resolved, since the test is compiled here. */
     Condition(Column col1, String relation, Column col2) {
         _left = col1;
         _right = col2;
@@ -42,6 +45,11 @@ class Condition {
         default:
             throw new DBException("Illegal relation.");
         }
+        boolean leftNum = col1.type().isNumeric(),
+            rightNum = col2.type().isNumeric();
+        _numeric = leftNum && (rightNum || col2 instanceof Literal)
+            || rightNum && col1 instanceof Literal;
+        _test = compile();
     }
 
     /** A Condition representing COL1 RELATION 'VAL2', where COL1 is
@@ -53,27 +61,354 @@ class Condition {
         this(col1, relation, new Literal(val2));
     }
 
+    /** Return a test equivalent to mine that is specialized to my
+     *  operands and relation, so that evaluating it allocates nothing
+     *  and checks the comparison result directly.  Equalities involving
+     *  a dictionary-encoded column compare codes rather than strings:
+     *  either the other side is a literal, whose code is looked up once
+     *  here, or it is a column sharing the same dictionary.  Numeric
+     *  comparisons read primitives and parse a literal operand only
+     *  once. */
+    private BooleanSupplier compile() {
+        boolean eq = code == EQ;
+        Column left = _left, right = _right;
+        DictionaryVector leftDict = left.dictionary(),
+            rightDict = right.dictionary();
+        if (left instanceof Literal && right instanceof Literal) {
+            boolean result = holds(left.value().compareTo(right.value()));
+            return () -> result;
+        } else if (_numeric) {
+            return compileNumeric();
+        } else if (eq || code == (GT | LT)) {
+            if (leftDict != null && leftDict == rightDict) {
+                return eq ? () -> left.code() == right.code()
+                    : () -> left.code() != right.code();
+            } else if (leftDict != null && right instanceof Literal) {
+                int lit = leftDict.codeOf(right.value());
+                return eq ? () -> left.code() == lit
+                    : () -> left.code() != lit;
+            } else if (rightDict != null && left instanceof Literal) {
+                int lit = rightDict.codeOf(left.value());
+                return eq ? () -> right.code() == lit
+                    : () -> right.code() != lit;
+            }
+        }
+        if (right instanceof Literal) {
+            return compiled(left, code, right.value());
+        } else if (left instanceof Literal) {
+            return compiled(right, flipped(code), left.value());
+        }
+        switch (code) {
+        case LT:
+            return () -> left.value().compareTo(right.value()) < 0;
+        case LT | EQ:
+            return () -> left.value().compareTo(right.value()) <= 0;
+        case GT:
+            return () -> left.value().compareTo(right.value()) > 0;
+        case GT | EQ:
+            return () -> left.value().compareTo(right.value()) >= 0;
+        case EQ:
+            return () -> left.value().equals(right.value());
+        default:
+            return () -> !left.value().equals(right.value());
+        }
+    }
+
+    /** Return my test when I compare numerically. */
+    private BooleanSupplier compileNumeric() {
+        Column left = _left, right = _right;
+        if (right instanceof Literal) {
+            return compiled(left, code,
+                            ColumnType.parseDouble(right.value()));
+        } else if (left instanceof Literal) {
+            return compiled(right, flipped(code),
+                            ColumnType.parseDouble(left.value()));
+        }
+        switch (code) {
+        case LT:
+            return () -> left.number() < right.number();
+        case LT | EQ:
+            return () -> left.number() <= right.number();
+        case GT:
+            return () -> left.number() > right.number();
+        case GT | EQ:
+            return () -> left.number() >= right.number();
+        case EQ:
+            return () -> left.number() == right.number();
+        default:
+            return () -> left.number() != right.number();
+        }
+    }
+
+    /** Return a numeric test of COL REL LIT, where REL is a relation
+     *  code. */
+    private static BooleanSupplier compiled(Column col, int rel, double lit) {
+        switch (rel) {
+        case LT:
+            return () -> col.number() < lit;
+        case LT | EQ:
+            return () -> col.number() <= lit;
+        case GT:
+            return () -> col.number() > lit;
+        case GT | EQ:
+            return () -> col.number() >= lit;
+        case EQ:
+            return () -> col.number() == lit;
+        default:
+            return () -> col.number() != lit;
+        }
+    }
+
+    /** Return a test of COL REL LIT, where REL is a relation code. */
+    private static BooleanSupplier compiled(Column col, int rel, String lit) {
+        switch (rel) {
+        case LT:
+            return () -> col.value().compareTo(lit) < 0;
+        case LT | EQ:
+            return () -> col.value().compareTo(lit) <= 0;
+        case GT:
+            return () -> col.value().compareTo(lit) > 0;
+        case GT | EQ:
+            return () -> col.value().compareTo(lit) >= 0;
+        case EQ:
+            return () -> col.value().equals(lit);
+        default:
+            return () -> !col.value().equals(lit);
+        }
+    }
+
+    /** Return the relation code R' such that A R' B iff B REL A. */
+    private static int flipped(int rel) {
+        return (rel & EQ) | ((rel & GT) != 0 ? LT : 0)
+            | ((rel & LT) != 0 ? GT : 0);
+    }
+
+    /** Return true iff my relation holds between two values whose
+     *  comparison (as by compareTo) yields CMP. */
+    private boolean holds(int cmp) {
+        return (code & (cmp > 0 ? GT : cmp < 0 ? LT : EQ)) != 0;
+    }
+
     /** Assuming that ROWS are rows from the respective tables from which
      *  my columns are selected, returns the result of performing the test I
      *  denote. */
     boolean test() {
-        int tVal = _left.value().compareTo(_right.value());
-        Boolean[] truths = new Boolean[6];
-        Arrays.fill(truths, Boolean.FALSE);
-        if (tVal > 0) {
-            truths[GT - 1] = true;
-            truths[(GT | EQ) - 1] = true;
-            truths[(~EQ) + 8 - 1] = true;
-        } else if (tVal < 0) {
-            truths[LT - 1] = true;
-            truths[(LT | EQ) - 1] = true;
-            truths[(~EQ) + 8 - 1] = true;
+        return _test.getAsBoolean();
+    }
+
+    /** Given that SELECTED[0 .. N-1] are positions of rows in the table
+     *  from which all my columns are selected, move those of them whose
+     *  rows satisfy me, in order, to the start of SELECTED, and return
+     *  their number.  This evaluates me over a block of rows at once (a
+     *  selection vector), leaving the table's iterator at an arbitrary
+     *  row. */
+    int select(int[] selected, int n) {
+        if (_batch == null) {
+            _batch = compileBatch();
+        }
+        return _batch.select(selected, n);
+    }
+
+    /** A test of a batch of rows, as for select. */
+    private interface BatchTest {
+        /** Compact SELECTED[0 .. N-1] to the positions passing me, and
+         *  return their number. */
+        int select(int[] selected, int n);
+    }
+
+    /** Return a batch test equivalent to mine.  Comparisons of a column
+     *  with a literal run as tight loops over the column's vector when
+     *  it has one: primitive comparisons for numeric vectors, and code
+     *  comparisons for (in)equalities on dictionary-encoded vectors.
+     *  Other tests position the iterator at each row and apply my
+     *  row-at-a-time test. */
+    private BatchTest compileBatch() {
+        Column col = _right instanceof Literal ? _left : _right;
+        Column lit = col == _left ? _right : _left;
+        int rel = col == _left ? code : flipped(code);
+        if (col instanceof Literal) {
+            boolean result = test();
+            return (selected, n) -> result ? n : 0;
+        }
+        ColumnVector vector = col.vector();
+        if (!(lit instanceof Literal)) {
+            return rowwise(col.source());
+        } else if (_numeric && vector instanceof IntVector) {
+            return intTest((IntVector) vector, rel,
+                           ColumnType.parseDouble(lit.value()));
+        } else if (_numeric && vector instanceof DoubleVector) {
+            return doubleTest((DoubleVector) vector, rel,
+                              ColumnType.parseDouble(lit.value()));
+        } else if (_numeric && vector != null) {
+            return numberTest(vector, rel,
+                              ColumnType.parseDouble(lit.value()));
+        } else if (!_numeric && col.dictionary() != null
+                   && (rel == EQ || rel == (GT | LT))) {
+            return codeTest(col.dictionary(), rel == EQ,
+                            col.dictionary().codeOf(lit.value()));
+        }
+        return rowwise(col.source());
+    }
+
+    /** Return a batch test that applies my row test to each row of
+     *  ITER's table. */
+    private BatchTest rowwise(TableIterator iter) {
+        BooleanSupplier test = _test;
+        return (selected, n) -> {
+            int m = 0;
+            for (int i = 0; i < n; i += 1) {
+                iter.seek(selected[i]);
+                if (test.getAsBoolean()) {
+                    selected[m] = selected[i];
+                    m += 1;
+                }
+            }
+            return m;
+        };
+    }
+
+    /** Return true iff relation REL holds between X and Y. */
+    private static boolean holds(int rel, double x, double y) {
+        return x < y ? (rel & LT) != 0 : x > y ? (rel & GT) != 0
+            : x == y ? (rel & EQ) != 0 : rel == (GT | LT);
+    }
+
+    /** Return a batch test of VECTOR REL LIT, where REL is a relation
+     *  code. */
+    private static BatchTest intTest(IntVector vector, int rel, double lit) {
+        return (selected, n) -> {
+            int m = 0;
+            for (int i = 0; i < n; i += 1) {
+                int p = selected[i];
+                selected[m] = p;
+                m += holds(rel, vector.get(p), lit) ? 1 : 0;
+            }
+            return m;
+        };
+    }
+
+    /** Return a batch test of VECTOR REL LIT, where REL is a relation
+     *  code. */
+    private static BatchTest doubleTest(DoubleVector vector, int rel,
+                                        double lit) {
+        return (selected, n) -> {
+            int m = 0;
+            for (int i = 0; i < n; i += 1) {
+                int p = selected[i];
+                selected[m] = p;
+                m += holds(rel, vector.get(p), lit) ? 1 : 0;
+            }
+            return m;
+        };
+    }
+
+    /** Return a batch test of VECTOR REL LIT, where VECTOR is numeric
+     *  and REL is a relation code. */
+    private static BatchTest numberTest(ColumnVector vector, int rel,
+                                        double lit) {
+        return (selected, n) -> {
+            int m = 0;
+            for (int i = 0; i < n; i += 1) {
+                int p = selected[i];
+                selected[m] = p;
+                m += holds(rel, vector.number(p), lit) ? 1 : 0;
+            }
+            return m;
+        };
+    }
+
+    /** Return a batch test of whether the codes in DICT equal CODE (if
+     *  EQ) or differ from it. */
+    private static BatchTest codeTest(DictionaryVector dict, boolean eq,
+                                      int code) {
+        return (selected, n) -> {
+            int m = 0;
+            for (int i = 0; i < n; i += 1) {
+                int p = selected[i];
+                selected[m] = p;
+                m += (dict.code(p) == code) == eq ? 1 : 0;
+            }
+            return m;
+        };
+    }
+
+    /** Return a copy of me whose columns are bound from FROM to TO (see
+     *  Column.bound). */
+    Condition bound(List<TableIterator> from, List<TableIterator> to) {
+        return new Condition(_left.bound(from, to), _relation,
+                             _right.bound(from, to));
+    }
+
+    /** Return the column on the left of my relation. */
+    Column left() {
+        return _left;
+    }
+
+    /** Return the column on the right of my relation. */
+    Column right() {
+        return _right;
+    }
+
+    /** Return my relation, one of "<", ">", "<=", ">=", "=", or "!=". */
+    String relation() {
+        return _relation;
+    }
+
+    /** Return true iff I compare my operands as numbers: both are numeric
+     *  columns, or one is and the other is a literal.  Otherwise, I
+     *  compare them as strings. */
+    boolean numeric() {
+        return _numeric;
+    }
+
+    /** Return a rough estimate of the fraction of rows satisfying me.
+     *  An equality with a literal on a dictionary-encoded column is
+     *  assumed to match one of its distinct values (or none, if the
+     *  literal does not occur). */
+    double selectivity() {
+        switch (code) {
+        case EQ:
+            DictionaryVector dict = _left.dictionary() != null
+                ? _left.dictionary() : _right.dictionary();
+            Column lit = _left instanceof Literal ? _left : _right;
+            if (dict != null && lit instanceof Literal
+                && dict.distinct() > 0) {
+                return dict.codeOf(lit.value()) == -1
+                    ? 0.0 : 1.0 / dict.distinct();
+            }
+            return 0.1;
+        case GT | LT:
+            return 0.9;
+        default:
+            return 1.0 / 3;
+        }
+    }
+
+    /** Return the relative cost of evaluating me once: comparing codes is
+     *  cheapest, then comparing a column with a literal, then comparing
+     *  two columns. */
+    double cost() {
+        boolean coded = (code == EQ || code == (GT | LT))
+            && (_left.dictionary() != null || _right.dictionary() != null)
+            && (_left.dictionary() == _right.dictionary()
+                || _left instanceof Literal || _right instanceof Literal);
+        if (coded || _numeric) {
+            return 1;
+        } else if (_left instanceof Literal || _right instanceof Literal) {
+            return 2;
         } else {
-            truths[EQ - 1] = true;
-            truths[(GT | EQ) - 1] = true;
-            truths[(LT | EQ) - 1] = true;
+            return 3;
         }
-        return truths[code - 1];
+    }
+
+    /** Return CONDITIONS reordered so that a conjunction of them fails
+     *  as cheaply as possible: by increasing cost / (1 - selectivity), the
+     *  expected cost of each condition per row it eliminates. */
+    static List<Condition> ordered(List<Condition> conditions) {
+        List<Condition> result = new ArrayList<Condition>(conditions);
+        result.sort(Comparator.comparingDouble(
+            c -> c.cost() / Math.max(1e-9, 1.0 - c.selectivity())));
+        return result;
     }
 
     /** Return true iff all CONDITIONS are satified. */
@@ -94,4 +429,10 @@ class Condition {
     protected String _relation;
     /** _relation translated to an integer from 1-6. */
     protected int code;
+    /** True iff I compare numerically. */
+    private final boolean _numeric;
+    /** My test, specialized to my operands and relation. */
+    private final BooleanSupplier _test;
+    /** My batch test, compiled when first needed. */
+    private BatchTest _batch;
 }
@@ -0,0 +1,195 @@
+package db61b;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static db61b.Utils.*;
+
+/** A loader for the body of a .db file in the text format, which parses
+ *  it in parallel.  The file is divided into chunks of about CHUNK_SIZE
+ *  bytes that end on line boundaries.  Each chunk is read with a
+ *  positional read on a shared FileChannel and split into rows on the
+ *  common ForkJoinPool; the rows are then converted to canonical form
+ *  and hashed in the same task.  The calling thread adds the resulting
+ *  batches to the table in file order, as each becomes available, so
+ *  that merging overlaps with parsing the chunks that follow.
+ *
+ *  Lines are split exactly as String.split(",") splits them (trailing
+ *  empty fields are dropped), and a trailing carriage return is
+ *  ignored, as by BufferedReader.readLine.
+ *  @author Yasaman Bahri
+ */
+class CsvLoader implements Closeable {
+
+    /** Nominal size in bytes of the chunks parsed by a single task. */
+    static final int CHUNK_SIZE = 1 << 22;
+    /** Size of the buffer used to scan for line boundaries. */
+    private static final int SCAN_SIZE = 1 << 12;
+
+    /** A loader for FILE. */
+    CsvLoader(File file) throws IOException {
+        _file = file;
+        _channel = FileChannel.open(file.toPath());
+        _size = _channel.size();
+    }
+
+    /** Return the first line of my file (without its terminator), or null
+     *  if the file is empty.  Must be called before load. */
+    String header() throws IOException {
+        if (_size == 0) {
+            return null;
+        }
+        _bodyStart = lineEnd(0);
+        byte[] bytes = read(0, _bodyStart);
+        int len = bytes.length;
+        while (len > 0
+               && (bytes[len - 1] == '\n' || bytes[len - 1] == '\r')) {
+            len -= 1;
+        }
+        return new String(bytes, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /** Add the rows in the remainder of my file, following its header, to
+     *  TABLE, as by TABLE.addAll, and return the number of rows added. */
+    int load(Table table) throws IOException {
+        List<Future<RowBatch>> batches = new ArrayList<Future<RowBatch>>();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        try {
+            long start = _bodyStart;
+            while (start < _size) {
+                long end = start + CHUNK_SIZE >= _size ? _size
+                    : lineEnd(start + CHUNK_SIZE - 1);
+                long from = start;
+                batches.add(pool.submit(() -> parse(table, from, end)));
+                start = end;
+            }
+            int added = 0;
+            for (Future<RowBatch> future : batches) {
+                added += table.addCanonical(future.get());
+            }
+            return added;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted reading from %s", _file);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DBException) {
+                throw (DBException) e.getCause();
+            } else if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw error("problem reading from %s", _file);
+        } finally {
+            for (Future<RowBatch> future : batches) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Return the position just past the first newline at or after POS,
+     *  or the size of my file if there is none. */
+    private long lineEnd(long pos) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SCAN_SIZE);
+        while (pos < _size) {
+            buf.clear();
+            int n = _channel.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i += 1) {
+                if (buf.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return _size;
+    }
+
+    /** Return the bytes of my file from FROM to TO - 1. */
+    private byte[] read(long from, long to) throws IOException {
+        byte[] bytes = new byte[(int) (to - from)];
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            if (_channel.read(buf, from + buf.position()) < 0) {
+                throw error("unexpected end of %s", _file);
+            }
+        }
+        return bytes;
+    }
+
+    /** Return the rows of TABLE in the lines of my file between positions
+     *  FROM and TO, which must be line boundaries, in canonical form. */
+    private RowBatch parse(Table table, long from, long to)
+        throws IOException {
+        String text = new String(read(from, to), StandardCharsets.UTF_8);
+        RowBatch batch = new RowBatch();
+        int n = text.length();
+        int start = 0;
+        while (start < n) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = n;
+            }
+            int next = end + 1;
+            if (end > start && text.charAt(end - 1) == '\r') {
+                end -= 1;
+            }
+            String[] fields = split(text, start, end);
+            if (fields.length != table.numColumns()) {
+                throw new DBException("Mismatching column sizes.");
+            }
+            Row row = table.canonical(new Row(fields));
+            batch.add(row, row.hashCode());
+            start = next;
+        }
+        return batch;
+    }
+
+    /** Return the comma-separated fields of TEXT[START .. END-1], as
+     *  String.split(",") would: trailing empty fields are dropped, unless
+     *  there are no commas at all. */
+    private static String[] split(String text, int start, int end) {
+        int count = 1;
+        for (int i = text.indexOf(',', start); i >= 0 && i < end;
+             i = text.indexOf(',', i + 1)) {
+            count += 1;
+        }
+        String[] fields = new String[count];
+        for (int k = 0; k < count; k += 1) {
+            int comma = k == count - 1 ? end : text.indexOf(',', start);
+            fields[k] = text.substring(start, comma);
+            start = comma + 1;
+        }
+        if (count == 1) {
+            return fields;
+        }
+        while (count > 0 && fields[count - 1].isEmpty()) {
+            count -= 1;
+        }
+        return count == fields.length ? fields : Arrays.copyOf(fields, count);
+    }
+
+    /** The file I load. */
+    private final File _file;
+    /** Channel on my file. */
+    private final FileChannel _channel;
+    /** Size of my file in bytes. */
+    private final long _size;
+    /** Position of the first line after the header. */
+    private long _bodyStart;
+}
@@ -0,0 +1,96 @@
+package db61b;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The values of one column of a table, stored as an array of integer
+ *  codes into a dictionary of the column's distinct values.  Two rows
+ *  have equal values in the column iff they have equal codes.
+ *  @author Yasaman Bahri
+ */
+class DictionaryVector extends ColumnVector {
+
+    @Override
+    int size() {
+        return _size;
+    }
+
+    /** Return the code of the value in row K. */
+    int code(int k) {
+        return _codes[k];
+    }
+
+    @Override
+    String value(int k) {
+        return _values[_codes[k]];
+    }
+
+    /** Return the value whose code is CODE. */
+    String decode(int code) {
+        return _values[code];
+    }
+
+    /** Return the number of distinct values seen so far. */
+    int distinct() {
+        return _numValues;
+    }
+
+    /** Return the code for VALUE, or -1 if VALUE does not occur in
+     *  this column.  For a snapshot, the code may belong to a value
+     *  added since it was made, which no row of the snapshot has. */
+    int codeOf(String value) {
+        Integer code = _codeOf.get(value);
+        return code == null ? -1 : code;
+    }
+
+    @Override
+    void add(String value) {
+        Integer code = _codeOf.get(value);
+        if (code == null) {
+            if (_numValues == _values.length) {
+                _values = Arrays.copyOf(_values, 2 * _numValues);
+            }
+            code = _numValues;
+            _values[_numValues] = value;
+            _numValues += 1;
+            _codeOf.put(value, code);
+        }
+        reserve(1);
+        _codes[_size] = code;
+        _size += 1;
+    }
+
+    @Override
+    void reserve(int n) {
+        if (_size + n > _codes.length) {
+            _codes = Arrays.copyOf(_codes, grown(_codes.length, _size + n));
+        }
+    }
+
+    @Override
+    DictionaryVector snapshot() {
+        DictionaryVector result = new DictionaryVector();
+        result._codes = _codes;
+        result._size = _size;
+        result._values = _values;
+        result._numValues = _numValues;
+        result._codeOf = _codeOf;
+        return result;
+    }
+
+    /** Initial capacity of my arrays. */
+    private static final int INITIAL_SIZE = 16;
+
+    /** Number of values stored. */
+    private int _size;
+    /** Code of each stored value, in row order. */
+    private int[] _codes = new int[INITIAL_SIZE];
+    /** The dictionary: _values[c] is the value with code c. */
+    private String[] _values = new String[INITIAL_SIZE];
+    /** Number of entries in _values that are in use. */
+    private int _numValues;
+    /** Inverse of _values, which snapshots share and read while values
+     *  are added. */
+    private ConcurrentHashMap<String, Integer> _codeOf =
+        new ConcurrentHashMap<>();
+}
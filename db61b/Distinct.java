@@ -0,0 +1,45 @@
+package db61b;
+
+/** A RowSource producing the rows of its input with duplicates removed.
+ *  Each row is produced as soon as it first appears; to do so, it
+ *  records every distinct row it has produced in a Table.
+ *  @author Yasaman Bahri
+ */
+class Distinct implements RowSource {
+
+    /** A RowSource producing the rows of INPUT that are not already in
+     *  SEEN, in order of first appearance, adding each to SEEN as it is
+     *  produced. */
+    Distinct(RowSource input, Table seen) {
+        _input = input;
+        _seen = seen;
+    }
+
+    @Override
+    public boolean next() {
+        while (_input.next()) {
+            _row = _input.row();
+            if (_seen.add(_row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        _input.close();
+    }
+
+    @Override
+    public Row row() {
+        return _row;
+    }
+
+    /** My input. */
+    private final RowSource _input;
+    /** The rows produced so far. */
+    private final Table _seen;
+    /** The current row. */
+    private Row _row;
+}
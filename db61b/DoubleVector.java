@@ -0,0 +1,61 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** A column of doubles, stored as a primitive array.
+ *  @author Yasaman Bahri
+ */
+class DoubleVector extends ColumnVector {
+
+    @Override
+    int size() {
+        return _size;
+    }
+
+    @Override
+    String value(int k) {
+        return Double.toString(_values[k]);
+    }
+
+    @Override
+    double number(int k) {
+        return _values[k];
+    }
+
+    /** Return the value in row K. */
+    double get(int k) {
+        return _values[k];
+    }
+
+    @Override
+    void add(String value) {
+        reserve(1);
+        _values[_size] = ColumnType.parseDouble(value);
+        _size += 1;
+    }
+
+    @Override
+    void reserve(int n) {
+        if (_size + n > _values.length) {
+            _values = Arrays.copyOf(_values, grown(_values.length, _size + n));
+        }
+    }
+
+    @Override
+    DoubleVector snapshot() {
+        DoubleVector result = new DoubleVector();
+        result._values = _values;
+        result._size = _size;
+        return result;
+    }
+
+    @Override
+    boolean matches(int k, String value) {
+        return _values[k] == ColumnType.parseDouble(value);
+    }
+
+    /** Number of values stored. */
+    private int _size;
+    /** The values, in row order. */
+    private double[] _values = new double[16];
+}
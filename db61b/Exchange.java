@@ -0,0 +1,126 @@
+package db61b;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+import static db61b.Utils.*;
+
+/** A RowSource that runs several copies of a pipeline in parallel, each
+ *  producing part of the result, and produces their rows part by part,
+ *  in order (the "exchange" operator of Volcano).  Each part's rows are
+ *  collected by its thread and handed over when the part is done.  At
+ *  most WINDOW parts are run or held at once, so that memory stays
+ *  bounded when the consumer is slower than the producers.
+ *  @author Yasaman Bahri
+ */
+class Exchange implements RowSource {
+
+    /** A RowSource producing the rows of PARTS(0), PARTS(1), ...,
+     *  PARTS(NUMPARTS - 1), each obtained and drained on a thread of
+     *  POOL, keeping up to WINDOW of them in progress.  POOL is shut down
+     *  once all parts have been consumed, one fails, or I am closed. */
+    Exchange(ExecutorService pool, int numParts, int window,
+             IntFunction<RowSource> parts) {
+        _pool = pool;
+        _numParts = numParts;
+        _window = window;
+        _parts = parts;
+    }
+
+    @Override
+    public boolean next() {
+        while (_rows == null || _i >= _rows.size()) {
+            if (_submitted == 0) {
+                while (_submitted < Math.min(_window, _numParts)) {
+                    submit();
+                }
+            }
+            if (_pending.isEmpty()) {
+                _pool.shutdown();
+                return false;
+            }
+            _rows = await(_pending.remove());
+            _i = 0;
+            if (_submitted < _numParts) {
+                submit();
+            }
+        }
+        _i += 1;
+        return true;
+    }
+
+    @Override
+    public Row row() {
+        return _rows.get(_i - 1);
+    }
+
+    /** Abandon the parts not yet consumed and shut down my threads. */
+    @Override
+    public void close() {
+        for (Future<List<Row>> part : _pending) {
+            part.cancel(true);
+        }
+        _pending.clear();
+        _rows = null;
+        _pool.shutdownNow();
+    }
+
+    /** Start the next part. */
+    private void submit() {
+        int p = _submitted;
+        _pending.add(_pool.submit(() -> {
+                    RowSource source = _parts.apply(p);
+                    try {
+                        List<Row> rows = new ArrayList<Row>();
+                        while (source.next()) {
+                            rows.add(source.row());
+                        }
+                        return rows;
+                    } finally {
+                        source.close();
+                    }
+                }));
+        _submitted += 1;
+    }
+
+    /** Return the rows of the part computed by FUTURE, rethrowing any
+     *  exception it threw. */
+    private List<Row> await(Future<List<Row>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            _pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw error("select interrupted");
+        } catch (ExecutionException e) {
+            _pool.shutdownNow();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw error("select failed: %s", e.getCause());
+        }
+    }
+
+    /** The threads running my parts. */
+    private final ExecutorService _pool;
+    /** Number of parts. */
+    private final int _numParts;
+    /** Maximum number of parts in progress or awaiting consumption. */
+    private final int _window;
+    /** Supplies the pipeline for each part. */
+    private final IntFunction<RowSource> _parts;
+    /** The parts started and not yet consumed, in order. */
+    private final ArrayDeque<Future<List<Row>>> _pending =
+        new ArrayDeque<Future<List<Row>>>();
+    /** Number of parts started. */
+    private int _submitted;
+    /** The rows of the part being consumed. */
+    private List<Row> _rows;
+    /** Index in _rows just past the current row. */
+    private int _i;
+}
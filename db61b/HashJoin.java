@@ -0,0 +1,62 @@
+package db61b;
+
+import java.util.HashMap;
+import java.util.List;
+
+/** An Operator that joins each combination of its outer input with the
+ *  rows of another table that have the same key, found in a hash table
+ *  built beforehand on the other table's join column.
+ *  @author Yasaman Bahri
+ */
+class HashJoin implements Operator {
+
+    /** An Operator producing each combination of a member of OUTER with
+     *  a row of INNER's table whose position is in the list BUCKETS maps
+     *  to OUTERCOL's key (as by key(NUMERIC)), and that satisfies
+     *  REST. */
+    HashJoin(Operator outer, TableIterator inner, Column outerCol,
+             boolean numeric, HashMap<Object, IntList> buckets,
+             List<Condition> rest) {
+        _outer = outer;
+        _inner = inner;
+        _outerCol = outerCol;
+        _numeric = numeric;
+        _buckets = buckets;
+        _rest = rest;
+    }
+
+    @Override
+    public boolean next() {
+        while (true) {
+            while (_bucket != null && _i < _bucket.size()) {
+                _inner.seek(_bucket.get(_i));
+                _i += 1;
+                if (Condition.test(_rest)) {
+                    return true;
+                }
+            }
+            if (!_outer.next()) {
+                return false;
+            }
+            _bucket = _buckets.get(_outerCol.key(_numeric));
+            _i = 0;
+        }
+    }
+
+    /** My outer input. */
+    private final Operator _outer;
+    /** Iterator over the table joined to it. */
+    private final TableIterator _inner;
+    /** The column of the outer input whose key is looked up. */
+    private final Column _outerCol;
+    /** True iff keys are numeric. */
+    private final boolean _numeric;
+    /** Positions of the inner rows with each key. */
+    private final HashMap<Object, IntList> _buckets;
+    /** Further conditions on the joined combinations. */
+    private final List<Condition> _rest;
+    /** The inner rows matching the current outer combination. */
+    private IntList _bucket;
+    /** Index of the next member of _bucket to try. */
+    private int _i;
+}
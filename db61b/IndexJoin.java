@@ -0,0 +1,60 @@
+package db61b;
+
+import java.util.List;
+
+/** An Operator that joins each combination of its outer input with the
+ *  rows of another table it finds by looking up its key in an
+ *  OrderedIndex on that table (an index nested-loop join).
+ *  @author Yasaman Bahri
+ */
+class IndexJoin implements Operator {
+
+    /** An Operator producing each combination of a member of OUTER with
+     *  a row of INNER's table whose key in INDEX bears the relation REL
+     *  to OUTERCOL's key, and that satisfies REST. */
+    IndexJoin(Operator outer, TableIterator inner, Column outerCol,
+              OrderedIndex index, String rel, List<Condition> rest) {
+        _outer = outer;
+        _inner = inner;
+        _outerCol = outerCol;
+        _index = index;
+        _relation = rel;
+        _rest = rest;
+    }
+
+    @Override
+    public boolean next() {
+        while (true) {
+            while (_matches != null && _i < _matches.size()) {
+                _inner.seek(_matches.get(_i));
+                _i += 1;
+                if (Condition.test(_rest)) {
+                    return true;
+                }
+            }
+            if (!_outer.next()) {
+                return false;
+            }
+            _matches = _index.lookup(_relation,
+                                     _outerCol.key(_index.numeric()));
+            _i = 0;
+        }
+    }
+
+    /** My outer input. */
+    private final Operator _outer;
+    /** Iterator over the table joined to it. */
+    private final TableIterator _inner;
+    /** The column of the outer input whose key is looked up. */
+    private final Column _outerCol;
+    /** The index on the inner table. */
+    private final OrderedIndex _index;
+    /** Relation of inner keys to the outer key. */
+    private final String _relation;
+    /** Further conditions on the joined combinations. */
+    private final List<Condition> _rest;
+    /** The inner rows matching the current outer combination. */
+    private IntList _matches;
+    /** Index of the next member of _matches to try. */
+    private int _i;
+}
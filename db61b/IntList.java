@@ -0,0 +1,48 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** A growable list of ints, used to hold row positions without boxing.
+ *  @author Yasaman Bahri
+ */
+class IntList {
+
+    /** Return my number of elements. */
+    int size() {
+        return _size;
+    }
+
+    /** Return element K.  Requires 0 <= K < size(). */
+    int get(int k) {
+        return _data[k];
+    }
+
+    /** Append X. */
+    void add(int x) {
+        if (_size == _data.length) {
+            _data = Arrays.copyOf(_data, Math.max(4, 2 * _size));
+        }
+        _data[_size] = x;
+        _size += 1;
+    }
+
+    /** Append the elements of OTHER, in order. */
+    void addAll(IntList other) {
+        if (_size + other._size > _data.length) {
+            _data = Arrays.copyOf(_data,
+                                  Math.max(_size + other._size, 2 * _size));
+        }
+        System.arraycopy(other._data, 0, _data, _size, other._size);
+        _size += other._size;
+    }
+
+    /** Sort my elements into increasing order. */
+    void sort() {
+        Arrays.sort(_data, 0, _size);
+    }
+
+    /** My elements are _data[0 .. _size-1]. */
+    private int[] _data = new int[2];
+    /** Number of elements. */
+    private int _size;
+}
@@ -0,0 +1,413 @@
+package db61b;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static db61b.Utils.*;
+
+/** Represents a stream of db61b tokens read from a given Reader.  It
+ *  produces the same tokens as a Tokenizer, and reports the same lexical
+ *  errors, but recognizes them a character at a time from its own
+ *  buffer instead of matching a regular expression per token.  It
+ *  classifies each token as it reads it, so that testing the next token
+ *  against one of Tokenizer's patterns (IDENTIFIER, LITERAL, NUMBER, or
+ *  RELATION) needs no matching either, and it keeps only the one token
+ *  of lookahead that the interpreter uses (unless asked to read a whole
+ *  statement ahead).  Punctuation and relation
+ *  symbols are shared constant Strings, so that scripts of many
+ *  statements allocate little beyond their names and literals.
+ *  @author Yasaman Bahri
+ */
+class Lexer {
+
+    /** Size of my input buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Kinds of token. */
+    private static final int
+        OTHER = 0, IDENTIFIER = 1, LITERAL = 2, NUMBER = 3, RELATION = 4;
+
+    /** The one-character tokens for ASCII characters, shared by all
+     *  Lexers. */
+    private static final String[] CHARS = new String[128];
+
+    static {
+        for (char c = 0; c < CHARS.length; c += 1) {
+            CHARS[c] = String.valueOf(c).intern();
+        }
+    }
+
+    /** A Lexer that reads tokens from INPUT, and prompts on PROMPTER,
+     *  if it is non-null. */
+    Lexer(Reader input, PrintStream prompter) {
+        _input = input;
+        _prompter = prompter;
+        _continued = false;
+        _shouldPrompt = true;
+    }
+
+    /** Read the next token into _token and _kind.  Skips comments and
+     *  ends-of-line.  Reads "*EOF*" at the end of input.  Throws
+     *  DBException on encountering a lexical error (such as an
+     *  unterminated literal), having read past the offending text. */
+    private void readToken() {
+        while (true) {
+            prompt();
+            int c = read();
+            while (c == ' ' || c == '\t' || c == '\f' || c == 0x0b
+                   || c == '\r' && peekChar() != '\n') {
+                c = read();
+            }
+            _kind = OTHER;
+            if (c < 0) {
+                _token = "*EOF*";
+            } else if (c == '\r' || c == '\n') {
+                if (c == '\r') {
+                    read();
+                }
+                _shouldPrompt = true;
+                continue;
+            } else if (c == '\'') {
+                _token = literal();
+                _kind = LITERAL;
+            } else if (isAlpha(c) || c == '_') {
+                _length = 0;
+                append(c);
+                while (isWord(peekChar())) {
+                    append(read());
+                }
+                _token = new String(_text, 0, _length);
+                _kind = IDENTIFIER;
+            } else if (isDigit(c)) {
+                _length = 0;
+                append(c);
+                while (isDigit(peekChar())) {
+                    append(read());
+                }
+                _token = new String(_text, 0, _length);
+                _kind = NUMBER;
+            } else if (c == '/' && peekChar() == '*') {
+                read();
+                comment();
+                continue;
+            } else if ((c == '<' || c == '>' || c == '!')
+                       && peekChar() == '=') {
+                read();
+                _token = c == '<' ? "<=" : c == '>' ? ">=" : "!=";
+                _kind = RELATION;
+            } else if (c < CHARS.length) {
+                _token = CHARS[c];
+                _kind = c == '=' || c == '<' || c == '>' ? RELATION : OTHER;
+            } else if (Character.isHighSurrogate((char) c)
+                       && Character.isLowSurrogate((char) peekChar())) {
+                _token = new String(new char[] { (char) c, (char) read() });
+            } else {
+                _token = String.valueOf((char) c);
+            }
+            _continued = !_token.equals(";");
+            return;
+        }
+    }
+
+    /** Read the rest of a literal whose opening quote has been read, and
+     *  return it, quotes included.  Throws DBException if it is
+     *  unterminated, leaving the character that ends it unread. */
+    private String literal() {
+        _length = 0;
+        append('\'');
+        while (true) {
+            int c = peekChar();
+            if (c < 0 || c == ',' || c == '\n' || c == '\r') {
+                throw error("unterminated literal constant");
+            }
+            append(read());
+            if (c == '\'') {
+                return new String(_text, 0, _length);
+            }
+        }
+    }
+
+    /** Skip the rest of a comment whose opening "/*" has been read.
+     *  Throws DBException if it is unterminated, having read to the end
+     *  of input. */
+    private void comment() {
+        int c = read();
+        while (c >= 0) {
+            int next = read();
+            if (c == '*' && next == '/') {
+                return;
+            }
+            c = next;
+        }
+        throw error("unterminated comment");
+    }
+
+    /** Print an appropriate prompt, if there is a prompter: either ">"
+     *  when expecting the start of a new command, or "..."
+     *  otherwise. */
+    private void prompt() {
+        if (_shouldPrompt && _prompter != null) {
+            if (_continued) {
+                _prompter.print("...");
+            } else {
+                _prompter.print("> ");
+            }
+            _prompter.flush();
+            _shouldPrompt = false;
+        }
+    }
+
+    /** Return true iff C is an ASCII letter. */
+    private static boolean isAlpha(int c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    /** Return true iff C is an ASCII digit. */
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** Return true iff C may continue an identifier. */
+    private static boolean isWord(int c) {
+        return isAlpha(c) || isDigit(c) || c == '_';
+    }
+
+    /** Add C to the text of the current token. */
+    private void append(int c) {
+        if (_length == _text.length) {
+            _text = Arrays.copyOf(_text, 2 * _length);
+        }
+        _text[_length] = (char) c;
+        _length += 1;
+    }
+
+    /** Return the next character of input without reading past it, or
+     *  -1 at the end of input. */
+    private int peekChar() {
+        if (_pos == _limit && !fill()) {
+            return -1;
+        }
+        return _buffer[_pos];
+    }
+
+    /** Read and return the next character of input, or -1 at the end of
+     *  input. */
+    private int read() {
+        if (_pos == _limit && !fill()) {
+            return -1;
+        }
+        _pos += 1;
+        return _buffer[_pos - 1];
+    }
+
+    /** Refill my buffer from my input, returning false iff there is no
+     *  more input.  As for a Scanner, an error reading the input ends
+     *  it. */
+    private boolean fill() {
+        int n;
+        try {
+            do {
+                n = _input.read(_buffer, 0, _buffer.length);
+            } while (n == 0);
+        } catch (IOException excp) {
+            n = -1;
+        }
+        _pos = 0;
+        _limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    /** Read ahead through the end of the next statement: the next ";"
+     *  token, or the end of input.  Tokens read ahead are returned as
+     *  usual, and any lexical error is reported when the token it
+     *  replaces is reached, so this changes nothing but the time at which
+     *  input is read.  It allows the statement to be parsed without
+     *  waiting for input (see Server). */
+    void readStatement() {
+        if (_token != null && isEnd(_token)) {
+            return;
+        }
+        for (Token token : _ahead) {
+            if (token.text != null && isEnd(token.text)) {
+                return;
+            }
+        }
+        String current = _token;
+        int kind = _kind;
+        while (true) {
+            Token token = new Token();
+            try {
+                readToken();
+                token.text = _token;
+                token.kind = _kind;
+            } catch (DBException excp) {
+                token.error = excp;
+            }
+            _ahead.add(token);
+            if (token.text != null && isEnd(token.text)) {
+                break;
+            }
+        }
+        _token = current;
+        _kind = kind;
+    }
+
+    /** Return true iff more input can be had without waiting: there are
+     *  tokens read ahead, characters buffered, or characters my input is
+     *  ready to supply. */
+    boolean ready() {
+        if (!_ahead.isEmpty() || _pos < _limit) {
+            return true;
+        }
+        try {
+            return _input.ready();
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return true iff TOKEN ends a statement. */
+    private static boolean isEnd(String token) {
+        return token.equals(";") || token.equals("*EOF*");
+    }
+
+    /** A token read ahead: its text and kind, or the lexical error
+     *  found in its place. */
+    private static class Token {
+        /** The text of the token, or null if it is an error. */
+        private String text;
+        /** The kind of the token. */
+        private int kind;
+        /** The error found in place of a token, or null. */
+        private DBException error;
+    }
+
+    /** Read and return the next token, if it matches P.  Otherwise throw
+     *  DBException */
+    String next(Pattern p) {
+        if (!nextIs(p)) {
+            if (nextIs("*EOF*")) {
+                throw error("unexpected end of input");
+            } else {
+                throw error("unexpected token: '%s'", peek());
+            }
+        }
+        return next();
+    }
+
+    /** Read and return the next token, if it equals P.  Otherwise throw
+     *  DBException */
+    String next(String p) {
+        if (!nextIs(p)) {
+            if (nextIs("*EOF*")) {
+                throw error("unexpected end of input");
+            } else {
+                throw error("unexpected token: '%s'", peek());
+            }
+        }
+        return next();
+    }
+
+    /** Read the next token, if it matches P, and return true.  Otherwise
+     *  return false.  Still throws DBException on detecting lexical
+     *  errors. */
+    boolean nextIf(Pattern p) {
+        if (nextIs(p)) {
+            next();
+            return true;
+        }
+        return false;
+    }
+
+    /** Read the next token, if it equals P, and return true.  Otherwise
+     *  return false.  Still throws DBException on detecting lexical
+     *  errors. */
+    boolean nextIf(String p) {
+        if (nextIs(p)) {
+            next();
+            return true;
+        }
+        return false;
+    }
+
+    /** Return true iff the next token matches P.  Throws DBException on
+     *  encountering a lexical error. */
+    boolean nextIs(Pattern p) {
+        String token = peek();
+        if (p == Tokenizer.IDENTIFIER) {
+            return _kind == IDENTIFIER;
+        } else if (p == Tokenizer.LITERAL) {
+            return _kind == LITERAL;
+        } else if (p == Tokenizer.NUMBER) {
+            return _kind == NUMBER;
+        } else if (p == Tokenizer.RELATION) {
+            return _kind == RELATION;
+        }
+        if (_mat == null) {
+            _mat = p.matcher("");
+        }
+        return _mat.usePattern(p).reset(token).matches();
+    }
+
+    /** Return true iff the next token equals P.  Throws DBException on
+     *  encountering a lexical error. */
+    boolean nextIs(String p) {
+        String token = peek();
+        return token.equals(p);
+    }
+
+    /** Return and read past the next token. */
+    String next() {
+        String token = peek();
+        _token = null;
+        return token;
+    }
+
+    /** Returns the next token without changing the position of THIS. */
+    String peek() {
+        if (_token == null) {
+            Token token = _ahead.poll();
+            if (token == null) {
+                readToken();
+            } else if (token.error != null) {
+                throw token.error;
+            } else {
+                _token = token.text;
+                _kind = token.kind;
+            }
+        }
+        return _token;
+    }
+
+    /** The character input source. */
+    private Reader _input;
+    /** Characters read from _input. */
+    private final char[] _buffer = new char[BUFFER_SIZE];
+    /** Position of the next unread character in _buffer. */
+    private int _pos;
+    /** Number of valid characters in _buffer. */
+    private int _limit;
+    /** The next token, or null if it has not yet been read. */
+    private String _token;
+    /** The kind of _token. */
+    private int _kind;
+    /** Tokens read ahead of _token (see readStatement). */
+    private final ArrayDeque<Token> _ahead = new ArrayDeque<Token>();
+    /** The text of the token being read. */
+    private char[] _text = new char[64];
+    /** Number of characters in _text. */
+    private int _length;
+    /** Matcher used for pattern matching, or null if not yet needed. */
+    private Matcher _mat;
+    /** Output for prompts.  Null if prompts not used. */
+    private PrintStream _prompter;
+    /** False iff the next token is expected to start a command. */
+    private boolean _continued;
+    /** True iff prompt is needed for the next token. */
+    private boolean _shouldPrompt;
+}
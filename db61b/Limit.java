@@ -0,0 +1,40 @@
+package db61b;
+
+/** A RowSource producing at most a given number of rows of its input.
+ *  It stops pulling from its input as soon as it has produced them, so
+ *  the operators below it do no further work.
+ *  @author Yasaman Bahri
+ */
+class Limit implements RowSource {
+
+    /** A RowSource producing the first LIMIT rows of INPUT. */
+    Limit(RowSource input, long limit) {
+        _input = input;
+        _remaining = limit;
+    }
+
+    @Override
+    public boolean next() {
+        if (_remaining <= 0 || !_input.next()) {
+            _remaining = 0;
+            return false;
+        }
+        _remaining -= 1;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        _input.close();
+    }
+
+    @Override
+    public Row row() {
+        return _input.row();
+    }
+
+    /** My input. */
+    private final RowSource _input;
+    /** Number of rows I may still produce. */
+    private long _remaining;
+}
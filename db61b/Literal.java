@@ -23,6 +23,25 @@ class Literal extends Column {
     void resolve(List<TableIterator> iterators) {
     }
 
+    @Override
+    Column bound(List<TableIterator> from, List<TableIterator> to) {
+        return this;
+    }
+
+    @Override
+    Object key(boolean numeric) {
+        if (numeric) {
+            double x = ColumnType.parseDouble(_value);
+            return x == 0.0 ? 0.0 : x;
+        }
+        return _value;
+    }
+
+    @Override
+    ColumnType type() {
+        return ColumnType.STRING;
+    }
+
     /** My value. */
     private final String _value;
 }
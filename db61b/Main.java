@@ -1,7 +1,7 @@
 package db61b;
 
-import java.util.Scanner;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStreamReader;
 
 /** The main program for db61b.
  *  @author Yasaman Bahri
@@ -9,19 +9,55 @@ import java.util.HashMap;
 public class Main {
 
     /** Version designation for this program. */
-    private static final String VERSION = "3.0";
+    static final String VERSION = "3.0";
+
+    /** Port on which a server listens by default. */
+    static final int DEFAULT_PORT = 6161;
 
     /** Starting with an empty database, read and execute commands from
      *  System.in until receiving a 'quit' ('exit') command or until
-     *  reaching the end of input. */
-    public static void main(String[] unused) {
+     *  reaching the end of input.  With the arguments "--server [PORT]",
+     *  instead serve sessions sharing one database on local port PORT
+     *  (default DEFAULT_PORT) (see Server).  With the arguments
+     *  "--log FILE", start instead with the database recovered from the
+     *  write-ahead log in FILE, and log changes to it (see
+     *  WriteAheadLog). */
+    public static void main(String[] args) {
+        String log = null;
+        int port = -1;
+        for (int i = 0; i < args.length; i += 1) {
+            if (args[i].equals("--server")) {
+                port = DEFAULT_PORT;
+                if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                    i += 1;
+                    port = Integer.parseInt(args[i]);
+                }
+            } else if (args[i].equals("--log") && i + 1 < args.length) {
+                i += 1;
+                log = args[i];
+            } else {
+                System.err.println("Usage: java db61b.Main [--log FILE]"
+                                   + " [--server [PORT]]");
+                System.exit(1);
+            }
+        }
+        Catalog catalog;
+        try {
+            catalog = log == null ? new Catalog() : new Catalog(log);
+        } catch (DBException e) {
+            System.err.printf("Error: %s%n", e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (port >= 0) {
+            serve(port, catalog);
+            return;
+        }
         System.out.printf("DB61B System.  Version %s.%n", VERSION);
 
-        HashMap<String, Table> db = new HashMap<>();
-
-        Scanner input = new Scanner(System.in);
+        InputStreamReader input = new InputStreamReader(System.in);
         CommandInterpreter interpreter =
-            new CommandInterpreter(db, input, System.out);
+            new CommandInterpreter(catalog, input, System.out, System.out);
 
         while (true) {
             try {
@@ -35,5 +71,19 @@ public class Main {
         }
     }
 
-}
+    /** Serve sessions sharing the tables of CATALOG on local port PORT
+     *  until killed. */
+    private static void serve(int port, Catalog catalog) {
+        try {
+            Server server = new Server(port, catalog);
+            System.out.printf("DB61B server listening on port %d.%n",
+                              server.port());
+            server.serve();
+        } catch (IOException e) {
+            System.err.printf("Error: cannot listen on port %d: %s%n",
+                              port, e.getMessage());
+            System.exit(1);
+        }
+    }
 
+}
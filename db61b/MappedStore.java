@@ -0,0 +1,78 @@
+package db61b;
+
+import static db61b.Utils.*;
+
+/** A read-only TableStore over the memory-mapped column blocks of a
+ *  binary table file.  A Table replaces it with a writable store the
+ *  first time a row is added.
+ *  @author Yasaman Bahri
+ */
+class MappedStore implements TableStore {
+
+    /** A store whose columns are COLUMNS, which must all have the same
+     *  size. */
+    MappedStore(MappedVector[] columns) {
+        _columns = columns;
+    }
+
+    @Override
+    public int size() {
+        return _columns.length == 0 ? 0 : _columns[0].size();
+    }
+
+    @Override
+    public String get(int row, int col) {
+        return _columns[col].value(row);
+    }
+
+    @Override
+    public Row row(int k) {
+        String[] data = new String[_columns.length];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = _columns[i].value(k);
+        }
+        return new Row(data);
+    }
+
+    @Override
+    public void add(Row row) {
+        throw error("mapped tables are read-only");
+    }
+
+    @Override
+    public void reserve(int n) {
+    }
+
+    @Override
+    public int hash(int k) {
+        return row(k).hashCode();
+    }
+
+    @Override
+    public boolean rowEquals(int k, Row row) {
+        for (int i = 0; i < _columns.length; i += 1) {
+            if (!_columns[i].value(k).equals(row.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
+
+    @Override
+    public TableStore snapshot() {
+        return this;
+    }
+
+    @Override
+    public ColumnVector column(int k) {
+        return _columns[k];
+    }
+
+    /** My columns. */
+    private final MappedVector[] _columns;
+}
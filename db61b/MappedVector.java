@@ -0,0 +1,171 @@
+package db61b;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static db61b.Utils.*;
+
+/** A read-only column whose values are read on demand from memory-mapped
+ *  blocks of a binary table file (see BinaryTable), one block per row
+ *  group.  Only the pages of the file that are touched are ever read.
+ *  @author Yasaman Bahri
+ */
+class MappedVector extends ColumnVector {
+
+    /** An empty column of values of type TYPE. */
+    MappedVector(ColumnType type) {
+        _type = type;
+    }
+
+    @Override
+    MappedVector snapshot() {
+        return this;
+    }
+
+    /** Add a row group of ROWS values, stored in VALUES, and, for a
+     *  string column, DICTIONARY (which holds the distinct values of
+     *  the group as length-prefixed UTF-8, VALUES holding their codes)
+     *  and DICTSIZE, the number of values in DICTIONARY. */
+    void addGroup(int rows, ByteBuffer values, ByteBuffer dictionary,
+                  int dictSize) {
+        int n = _numGroups;
+        if (n == _starts.length) {
+            _starts = Arrays.copyOf(_starts, 2 * n);
+            _values = Arrays.copyOf(_values, 2 * n);
+            _dicts = Arrays.copyOf(_dicts, 2 * n);
+            _entries = Arrays.copyOf(_entries, 2 * n);
+            _dictSizes = Arrays.copyOf(_dictSizes, 2 * n);
+        }
+        _starts[n] = _size;
+        _values[n] = values;
+        _dicts[n] = dictionary;
+        _dictSizes[n] = dictSize;
+        _numGroups += 1;
+        _size += rows;
+    }
+
+    @Override
+    int size() {
+        return _size;
+    }
+
+    @Override
+    String value(int k) {
+        int g = group(k);
+        int i = k - _starts[g];
+        switch (_type) {
+        case INT:
+            return Integer.toString(_values[g].getInt(4 * i));
+        case DOUBLE:
+            return Double.toString(_values[g].getDouble(8 * i));
+        default:
+            return decode(g, _values[g].getInt(4 * i));
+        }
+    }
+
+    @Override
+    double number(int k) {
+        int g = group(k);
+        int i = k - _starts[g];
+        switch (_type) {
+        case INT:
+            return _values[g].getInt(4 * i);
+        case DOUBLE:
+            return _values[g].getDouble(8 * i);
+        default:
+            return super.number(k);
+        }
+    }
+
+    @Override
+    void add(String value) {
+        throw error("mapped columns are read-only");
+    }
+
+    @Override
+    void reserve(int n) {
+        throw error("mapped columns are read-only");
+    }
+
+    /** Return the index of the row group containing row K. */
+    private int group(int k) {
+        int g = _lastGroup;
+        if (k >= _starts[g] && (g + 1 == _numGroups || k < _starts[g + 1])) {
+            return g;
+        }
+        g = Arrays.binarySearch(_starts, 0, _numGroups, k);
+        if (g < 0) {
+            g = -g - 2;
+        }
+        _lastGroup = g;
+        return g;
+    }
+
+    /** Return the string whose code in the dictionary of group G is
+     *  CODE, decoding it (and on first use, locating all the entries of
+     *  that dictionary) if necessary. */
+    private String decode(int g, int code) {
+        Entries entries = _entries[g];
+        if (entries == null) {
+            entries = new Entries(_dicts[g], _dictSizes[g]);
+            _entries[g] = entries;
+        }
+        String result = entries.decoded[code];
+        if (result == null) {
+            ByteBuffer dict = _dicts[g];
+            int p = entries.offsets[code];
+            byte[] bytes = new byte[dict.getInt(p)];
+            for (int i = 0; i < bytes.length; i += 1) {
+                bytes[i] = dict.get(p + 4 + i);
+            }
+            result = new String(bytes, StandardCharsets.UTF_8);
+            entries.decoded[code] = result;
+        }
+        return result;
+    }
+
+    /** The locations of the entries of one dictionary, and a cache of
+     *  those already decoded.  Since its fields are final, an Entries
+     *  may be shared between threads without synchronization. */
+    private static class Entries {
+        /** The entries of the dictionary of SIZE entries in DICT. */
+        Entries(ByteBuffer dict, int size) {
+            offsets = new int[size];
+            decoded = new String[size];
+            int p = 0;
+            for (int c = 0; c < size; c += 1) {
+                offsets[c] = p;
+                p += 4 + dict.getInt(p);
+            }
+        }
+
+        /** offsets[c] is the position of entry c in the dictionary. */
+        final int[] offsets;
+        /** decoded[c] is entry c, or null if not yet decoded. */
+        final String[] decoded;
+    }
+
+    /** Initial capacity of my per-group arrays. */
+    private static final int INITIAL_GROUPS = 4;
+
+    /** The type of my values. */
+    private final ColumnType _type;
+    /** Total number of values. */
+    private int _size;
+    /** Number of row groups. */
+    private int _numGroups;
+    /** Group most recently looked up, which is checked first. */
+    private int _lastGroup;
+    /** _starts[g] is the number of the first row of group g. */
+    private int[] _starts = new int[INITIAL_GROUPS];
+    /** _values[g] holds the values (or codes) of group g. */
+    private ByteBuffer[] _values = new ByteBuffer[INITIAL_GROUPS];
+    /** _dicts[g] holds the dictionary of group g (string columns). */
+    private ByteBuffer[] _dicts = new ByteBuffer[INITIAL_GROUPS];
+    /** _dictSizes[g] is the number of entries in _dicts[g]. */
+    private int[] _dictSizes = new int[INITIAL_GROUPS];
+    /** _entries[g] locates the entries of _dicts[g], or is null if they
+     *  have not been needed yet. */
+    private Entries[] _entries = new Entries[INITIAL_GROUPS];
+}
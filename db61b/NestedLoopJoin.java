@@ -0,0 +1,55 @@
+package db61b;
+
+import java.util.List;
+
+/** An Operator that joins each combination of its outer input with
+ *  every row of another table, keeping those that satisfy its
+ *  conditions.
+ *  @author Yasaman Bahri
+ */
+class NestedLoopJoin implements Operator {
+
+    /** An Operator producing each combination of a member of OUTER with
+     *  one of the first SIZE rows of INNER's table that satisfies REST,
+     *  where row #j is at position ROWS.get(j), or at position j if ROWS
+     *  is null. */
+    NestedLoopJoin(Operator outer, TableIterator inner, IntList rows,
+                   int size, List<Condition> rest) {
+        _outer = outer;
+        _inner = inner;
+        _rows = rows;
+        _size = size;
+        _rest = rest;
+        _j = size;
+    }
+
+    @Override
+    public boolean next() {
+        while (true) {
+            while (_j < _size) {
+                _inner.seek(_rows == null ? _j : _rows.get(_j));
+                _j += 1;
+                if (Condition.test(_rest)) {
+                    return true;
+                }
+            }
+            if (!_outer.next()) {
+                return false;
+            }
+            _j = 0;
+        }
+    }
+
+    /** My outer input. */
+    private final Operator _outer;
+    /** Iterator over the table joined to it. */
+    private final TableIterator _inner;
+    /** Positions of the inner rows, or null for all rows. */
+    private final IntList _rows;
+    /** Number of inner rows. */
+    private final int _size;
+    /** The conditions on the joined combinations. */
+    private final List<Condition> _rest;
+    /** Index of the next inner row to try. */
+    private int _j;
+}
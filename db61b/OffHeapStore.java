@@ -0,0 +1,215 @@
+package db61b;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** A TableStore that keeps its rows outside the Java heap, packed into
+ *  direct ByteBuffers ("slabs") of SLAB_SIZE bytes (or larger, for a row
+ *  that does not fit in one).  A row is stored as its hash (as by
+ *  Row.hashCode) followed by each of its values as the length of its
+ *  UTF-8 encoding and then the encoding, and is addressed by its offset:
+ *  the number of its slab in the high 32 bits and its position there in
+ *  the low.  However many rows there are, the heap holds just the array
+ *  of offsets and one object per slab, so that the garbage collector has
+ *  almost nothing to trace.  A value is decoded only when asked for, and
+ *  a Row is compared with a stored row a character at a time, without
+ *  decoding it.
+ *
+ *  Rows are written only past the end of those already stored, and with
+ *  absolute puts, which do not disturb the buffers' positions, so that
+ *  snapshots share my slabs.
+ *  @author Yasaman Bahri
+ */
+class OffHeapStore implements TableStore {
+
+    /** Size in bytes of a slab. */
+    static final int SLAB_SIZE = 1 << 20;
+
+    /** An empty store of rows of COLUMNS values. */
+    OffHeapStore(int columns) {
+        this(columns, new ByteBuffer[4], 0, new long[16], 0, 0, false);
+    }
+
+    /** A store of the first SIZE rows of COLUMNS values at OFFSETS, in
+     *  the first NUMSLABS of SLABS, of which the last is filled to
+     *  position FILL, which is read-only iff READONLY. */
+    private OffHeapStore(int columns, ByteBuffer[] slabs, int numSlabs,
+                         long[] offsets, int size, int fill,
+                         boolean readOnly) {
+        _columns = columns;
+        _slabs = slabs;
+        _numSlabs = numSlabs;
+        _offsets = offsets;
+        _size = size;
+        _fill = fill;
+        _readOnly = readOnly;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public String get(int row, int col) {
+        ByteBuffer slab = slab(row);
+        int pos = position(row) + 4;
+        for (int k = 0; k < col; k += 1) {
+            pos += 4 + slab.getInt(pos);
+        }
+        return decode(slab, pos);
+    }
+
+    @Override
+    public Row row(int k) {
+        ByteBuffer slab = slab(k);
+        int pos = position(k) + 4;
+        String[] data = new String[_columns];
+        for (int c = 0; c < data.length; c += 1) {
+            data[c] = decode(slab, pos);
+            pos += 4 + slab.getInt(pos);
+        }
+        return new Row(data);
+    }
+
+    @Override
+    public void add(Row row) {
+        reserve(1);
+        byte[][] values = new byte[row.size()][];
+        int length = 4;
+        for (int c = 0; c < values.length; c += 1) {
+            values[c] = row.get(c).getBytes(StandardCharsets.UTF_8);
+            length += 4 + values[c].length;
+        }
+        if (_numSlabs == 0 || _fill + length > slab().capacity()) {
+            addSlab(length);
+        }
+        ByteBuffer slab = slab();
+        int pos = _fill;
+        _offsets[_size] = (long) (_numSlabs - 1) << 32 | pos;
+        slab.putInt(pos, row.hashCode());
+        pos += 4;
+        for (byte[] value : values) {
+            slab.putInt(pos, value.length);
+            slab.put(pos + 4, value);
+            pos += 4 + value.length;
+        }
+        _fill = pos;
+        _size += 1;
+    }
+
+    /** Start a new slab, large enough for a row of LENGTH bytes. */
+    private void addSlab(int length) {
+        if (_numSlabs == _slabs.length) {
+            _slabs = Arrays.copyOf(_slabs, 2 * _slabs.length);
+        }
+        _slabs[_numSlabs] =
+            ByteBuffer.allocateDirect(Math.max(SLAB_SIZE, length));
+        _numSlabs += 1;
+        _fill = 0;
+    }
+
+    @Override
+    public void reserve(int n) {
+        if (_size + n > _offsets.length) {
+            _offsets = Arrays.copyOf(_offsets,
+                                     ColumnVector.grown(_offsets.length,
+                                                        _size + n));
+        }
+    }
+
+    @Override
+    public int hash(int k) {
+        return slab(k).getInt(position(k));
+    }
+
+    @Override
+    public boolean rowEquals(int k, Row row) {
+        ByteBuffer slab = slab(k);
+        int pos = position(k) + 4;
+        for (int c = 0; c < row.size(); c += 1) {
+            int length = slab.getInt(pos);
+            if (!equals(row.get(c), slab, pos + 4, length)) {
+                return false;
+            }
+            pos += 4 + length;
+        }
+        return true;
+    }
+
+    /** Return true iff S is the string whose UTF-8 encoding is the LENGTH
+     *  bytes at POS in SLAB. */
+    private static boolean equals(String s, ByteBuffer slab, int pos,
+                                  int length) {
+        if (s.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                return Arrays.equals(s.getBytes(StandardCharsets.UTF_8),
+                                     bytes(slab, pos, length));
+            }
+            if (slab.get(pos + i) != c) {
+                return false;
+            }
+        }
+        return s.length() == length;
+    }
+
+    @Override
+    public boolean readOnly() {
+        return _readOnly;
+    }
+
+    @Override
+    public TableStore snapshot() {
+        return new OffHeapStore(_columns, _slabs, _numSlabs, _offsets,
+                                _size, _fill, true);
+    }
+
+    /** Return the slab rows are being added to. */
+    private ByteBuffer slab() {
+        return _slabs[_numSlabs - 1];
+    }
+
+    /** Return the slab holding row K. */
+    private ByteBuffer slab(int k) {
+        return _slabs[(int) (_offsets[k] >>> 32)];
+    }
+
+    /** Return the position of row K in its slab. */
+    private int position(int k) {
+        return (int) _offsets[k];
+    }
+
+    /** Return the value whose length is at POS in SLAB, decoded. */
+    private static String decode(ByteBuffer slab, int pos) {
+        return new String(bytes(slab, pos + 4, slab.getInt(pos)),
+                          StandardCharsets.UTF_8);
+    }
+
+    /** Return the LENGTH bytes at POS in SLAB. */
+    private static byte[] bytes(ByteBuffer slab, int pos, int length) {
+        byte[] bytes = new byte[length];
+        slab.get(pos, bytes);
+        return bytes;
+    }
+
+    /** Number of values in each row. */
+    private final int _columns;
+    /** My slabs are _slabs[0 .. _numSlabs-1]. */
+    private ByteBuffer[] _slabs;
+    /** Number of slabs in use. */
+    private int _numSlabs;
+    /** The offsets of my rows, in order of insertion, are
+     *  _offsets[0 .. _size-1]. */
+    private long[] _offsets;
+    /** Number of rows stored. */
+    private int _size;
+    /** Position in my last slab at which the next row is written. */
+    private int _fill;
+    /** True iff I am a snapshot, which may not be added to. */
+    private final boolean _readOnly;
+}
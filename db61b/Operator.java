@@ -0,0 +1,30 @@
+package db61b;
+
+/** A node in the tree of operators that evaluates a select.  Operators
+ *  are pull-based: each call to next produces one more combination of
+ *  rows, one from each of the tables the operator covers, by moving
+ *  the TableIterators of those tables to them, so that Columns and
+ *  Conditions resolved to the iterators see that combination.  Rows
+ *  thus stream through the tree one combination at a time, and only
+ *  operators that must see all of their input before producing any
+ *  output hold on to more than the current one.  Those that set rows
+ *  aside in temporary files release them when closed.
+ *  @author Yasaman Bahri
+ */
+interface Operator {
+
+    /** Make the next combination I produce current, returning false
+     *  (leaving the iterators in unspecified positions) if there are no
+     *  more. */
+    boolean next();
+
+    /** Release the resources (such as temporary files) held by me and by
+     *  the operators below me, abandoning any combinations I have not
+     *  produced.  I must not be used afterwards.  This is called once a
+     *  select is done with me, whether or not I was exhausted and
+     *  whether or not it failed, so it must tolerate being called in
+     *  any state, and more than once.  Operators that hold nothing need
+     *  not override it. */
+    default void close() {
+    }
+}
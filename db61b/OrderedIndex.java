@@ -0,0 +1,177 @@
+package db61b;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/** A secondary index on one column of a Table, mapping each value of the
+ *  column, in order, to the positions of the rows that contain it.  Values
+ *  are ordered as Conditions compare them (numerically for numeric
+ *  columns), so that point and range conditions on the column can be
+ *  answered without a scan.  Values are represented by keys, as for
+ *  Column.key.
+ *  @author Yasaman Bahri
+ */
+class OrderedIndex {
+
+    /** An empty index named NAME on column number COLUMN, whose values
+     *  have type TYPE. */
+    OrderedIndex(String name, int column, ColumnType type) {
+        _name = name;
+        _column = column;
+        _numeric = type.isNumeric();
+        _entries = new TreeMap<Object, IntList>(Column::compareKeys);
+        _limit = Integer.MAX_VALUE;
+    }
+
+    /** A view of INDEX that covers only the rows at positions less than
+     *  LIMIT. */
+    private OrderedIndex(OrderedIndex index, int limit) {
+        _name = index._name;
+        _column = index._column;
+        _numeric = index._numeric;
+        _entries = index._entries;
+        _limit = limit;
+    }
+
+    /** Return a view of me that covers only the rows at positions less
+     *  than LIMIT, for a snapshot of my table (see Table.snapshot).  It
+     *  shares my entries, which may be read through it while rows are
+     *  added to me: both lock the entries while using them. */
+    OrderedIndex view(int limit) {
+        return new OrderedIndex(this, limit);
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return the number of the column I index. */
+    int column() {
+        return _column;
+    }
+
+    /** Return true iff my keys are numbers. */
+    boolean numeric() {
+        return _numeric;
+    }
+
+    /** Return the key I use for VALUE. */
+    Object key(String value) {
+        return _numeric ? (Object) (ColumnType.parseDouble(value) + 0.0)
+            : value;
+    }
+
+    /** Return the result of comparing my keys A and B. */
+    int compare(Object a, Object b) {
+        return Column.compareKeys(a, b);
+    }
+
+    /** Record that the row at POS has value VALUE in my column. */
+    void add(String value, int pos) {
+        Object key = key(value);
+        synchronized (_entries) {
+            IntList rows = _entries.get(key);
+            if (rows == null) {
+                rows = new IntList();
+                _entries.put(key, rows);
+            }
+            rows.add(pos);
+        }
+    }
+
+    /** Record that ROWS, in order, are at consecutive positions starting
+     *  at FIRST.  The positions for each distinct value are gathered
+     *  first, so that my tree is searched once per value rather than
+     *  once per row. */
+    void addAll(List<Row> rows, int first) {
+        HashMap<Object, IntList> groups = new HashMap<Object, IntList>();
+        for (int i = 0; i < rows.size(); i += 1) {
+            Object key = key(rows.get(i).get(_column));
+            IntList positions = groups.get(key);
+            if (positions == null) {
+                positions = new IntList();
+                groups.put(key, positions);
+            }
+            positions.add(first + i);
+        }
+        synchronized (_entries) {
+            for (Map.Entry<Object, IntList> group : groups.entrySet()) {
+                IntList existing = _entries.get(group.getKey());
+                if (existing == null) {
+                    _entries.put(group.getKey(), group.getValue());
+                } else {
+                    IntList positions = group.getValue();
+                    for (int i = 0; i < positions.size(); i += 1) {
+                        existing.add(positions.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return the positions of the rows whose key K satisfies
+     *  K REL KEY, where REL is one of "=", "<", "<=", ">", or ">=". */
+    IntList lookup(String rel, Object key) {
+        switch (rel) {
+        case "=":
+            return lookup(key, true, key, true);
+        case "<":
+            return lookup(null, false, key, false);
+        case "<=":
+            return lookup(null, false, key, true);
+        case ">":
+            return lookup(key, false, null, false);
+        case ">=":
+            return lookup(key, true, null, false);
+        default:
+            throw new IllegalArgumentException("bad index relation");
+        }
+    }
+
+    /** Return the positions of the rows whose keys lie between LO and
+     *  HI, which are included iff LOINCLUSIVE and HIINCLUSIVE,
+     *  respectively.  A null bound is unbounded. */
+    IntList lookup(Object lo, boolean loInclusive,
+                   Object hi, boolean hiInclusive) {
+        NavigableMap<Object, IntList> range = _entries;
+        if (lo != null && hi != null) {
+            int c = compare(lo, hi);
+            if (c > 0 || c == 0 && !(loInclusive && hiInclusive)) {
+                return new IntList();
+            }
+        }
+        IntList result = new IntList();
+        synchronized (_entries) {
+            if (lo != null) {
+                range = range.tailMap(lo, loInclusive);
+            }
+            if (hi != null) {
+                range = range.headMap(hi, hiInclusive);
+            }
+            for (Map.Entry<Object, IntList> entry : range.entrySet()) {
+                IntList rows = entry.getValue();
+                for (int i = 0; i < rows.size() && rows.get(i) < _limit;
+                     i += 1) {
+                    result.add(rows.get(i));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** My name. */
+    private final String _name;
+    /** The number of the column I index. */
+    private final int _column;
+    /** True iff my keys are Doubles rather than Strings. */
+    private final boolean _numeric;
+    /** I cover only rows at positions less than this. */
+    private final int _limit;
+    /** Maps the key of each value in my column to the rows containing
+     *  it. */
+    private final TreeMap<Object, IntList> _entries;
+}
@@ -0,0 +1,839 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static db61b.Utils.*;
+
+/** Plans the evaluation of a select as a tree of Operators through
+ *  which the selected rows stream.  The plan is left-deep: one table,
+ *  the driving table, is scanned, and each combination of rows built
+ *  from it is joined with the remaining tables one at a time.  For each
+ *  possible driving table, the planner orders the other tables greedily
+ *  from their estimated sizes and the conditions that connect them,
+ *  adding at each step the table whose join is expected to produce the
+ *  fewest rows; it then runs the cheapest of these plans.  Each table is
+ *  joined with a hash join (HashJoin) when an equality condition
+ *  connects it to the tables before it, with a BandJoin for an
+ *  inequality, and with a NestedLoopJoin only when nothing does; an
+ *  index on its join column allows an IndexJoin, which looks up the
+ *  matches for each combination instead of reading the whole table.
+ *  Conditions that mention a single table are applied to that table
+ *  first, a block of rows at a time by a BatchScan: to the driving
+ *  table as it is read, and to the others before they are joined, so
+ *  that the hash tables and sorted keys built for the joins hold only
+ *  the surviving rows.  Every other condition is tested as soon as all
+ *  the tables it mentions have been joined.  When a table has an
+ *  OrderedIndex on a column compared with a literal, the index supplies
+ *  the candidate rows instead of a scan.
+ *
+ *  Only the joined tables are read in full before the first row is
+ *  produced; the rows of the driving table, and the combinations made
+ *  from them, stream through the plan.
+ *
+ *  With a parallelism greater than 1, large inputs are divided into
+ *  ranges processed in parallel: the scans that apply conditions to the
+ *  joined tables, and the driving table, whose ranges each run through
+ *  a copy of the whole pipeline, combined by an Exchange.  Each range
+ *  is handled by a worker: a copy of the planner with its own
+ *  TableIterators and its own copies of the Conditions and Columns
+ *  bound to them, since evaluating them moves the iterators.  Hash
+ *  tables, sorted keys and filtered rows are built once and shared by
+ *  the workers, which only read them.  The results of the ranges are
+ *  produced in order, so a parallel select produces the same rows in
+ *  the same order as a sequential one.
+ *  @author Yasaman Bahri
+ */
+class Planner {
+
+    /** A planner for selecting from the tables of ITERATORS the
+     *  combinations of rows that satisfy CONDITIONS, whose Columns must
+     *  all be resolved to members of ITERATORS.  It runs on a single
+     *  thread. */
+    Planner(List<TableIterator> iterators, List<Condition> conditions) {
+        this(iterators, conditions, 1);
+    }
+
+    /** A planner as above that uses up to PARALLELISM threads. */
+    Planner(List<TableIterator> iterators, List<Condition> conditions,
+            int parallelism) {
+        if (iterators.size() >= Long.SIZE) {
+            throw error("too many tables in select");
+        }
+        _iterators = iterators;
+        _conditions = conditions;
+        _parallelism = parallelism;
+        _parent = null;
+        _masks = new long[conditions.size()];
+        for (int i = 0; i < conditions.size(); i += 1) {
+            Condition cond = conditions.get(i);
+            _masks[i] = mask(cond.left()) | mask(cond.right());
+        }
+    }
+
+    /** A worker for PARENT, with its own iterators over PARENT's tables
+     *  and its own copies of PARENT's conditions, sharing PARENT's plan
+     *  and the data prepared for it. */
+    private Planner(Planner parent) {
+        _iterators = new ArrayList<TableIterator>();
+        for (TableIterator iter : parent._iterators) {
+            _iterators.add(iter.table().tableIterator());
+        }
+        _conditions = new ArrayList<Condition>();
+        for (Condition cond : parent._conditions) {
+            _conditions.add(cond.bound(parent._iterators, _iterators));
+        }
+        _parallelism = 1;
+        _parent = parent;
+        _masks = parent._masks;
+        _local = parent._local;
+        _rows = parent._rows;
+        _driving = parent._driving;
+        _drivingRows = parent._drivingRows;
+        _drivingFilter = parent._drivingFilter;
+        _steps = parent._steps;
+    }
+
+    /** Return a RowSource producing the values of COLUMNS (which must be
+     *  resolved to my iterators) for every combination of rows
+     *  satisfying my conditions.  It may produce the same row more than
+     *  once (see Distinct). */
+    RowSource rows(List<Column> columns) {
+        boolean[] applied = new boolean[_conditions.size()];
+        _local = new ArrayList<List<Condition>>();
+        for (int t = 0; t < _iterators.size(); t += 1) {
+            _local.add(new ArrayList<Condition>());
+        }
+        for (int i = 0; i < _masks.length; i += 1) {
+            if (_masks[i] == 0) {
+                applied[i] = true;
+                if (!_conditions.get(i).test()) {
+                    return new Project(() -> false, columns);
+                }
+            } else if (Long.bitCount(_masks[i]) == 1) {
+                applied[i] = true;
+                _local.get(Long.numberOfTrailingZeros(_masks[i]))
+                    .add(_conditions.get(i));
+            }
+        }
+        double cost = plan(applied);
+        int n;
+        try {
+            n = prepare();
+        } catch (RuntimeException e) {
+            shutdown();
+            throw e;
+        }
+        double work = n + Math.max(0, cost);
+        int min = (int) Math.max(1, MIN_PART * n / Math.max(1, work));
+        int parts = _parallelism <= 1 ? 1
+            : (int) Math.min((long) _parallelism * TASKS_PER_THREAD, n / min);
+        if (parts <= 1) {
+            shutdown();
+            return pipeline(0, n, columns);
+        }
+        if (_pool == null) {
+            _pool = new ForkJoinPool(_parallelism);
+        }
+        return new Exchange(_pool, parts, 2 * _parallelism, p -> {
+                Planner w = new Planner(this);
+                List<Column> cols = new ArrayList<Column>();
+                for (Column col : columns) {
+                    cols.add(w.counterpart(col));
+                }
+                return w.pipeline((int) ((long) n * p / parts),
+                                  (int) ((long) n * (p + 1) / parts), cols);
+            });
+    }
+
+    /** Shut down my threads, if any. */
+    private void shutdown() {
+        if (_pool != null) {
+            _pool.shutdown();
+            _pool = null;
+        }
+    }
+
+    /** Return the pipeline that produces the values of COLUMNS (resolved
+     *  to my iterators) for the combinations that my plan builds from
+     *  the driving table's candidate rows FROM to TO - 1. */
+    private RowSource pipeline(int from, int to, List<Column> columns) {
+        Operator op = _drivingFilter.isEmpty()
+            ? new Scan(_iterators.get(_driving), _drivingRows, from, to)
+            : new BatchScan(_iterators.get(_driving), _drivingRows, from, to,
+                            counterparts(_drivingFilter));
+        for (Step step : _steps) {
+            op = join(step, op);
+        }
+        return new Project(op, columns);
+    }
+
+    /** The ways in which a table may be joined. */
+    private enum Method {
+        /** Using HashJoin. */
+        HASH,
+        /** Using BandJoin. */
+        BAND,
+        /** Using IndexJoin. */
+        INDEX,
+        /** Using NestedLoopJoin. */
+        NESTED
+    }
+
+    /** One step of a plan: the join of one table with the combinations
+     *  of rows from the tables before it, and the data prepared for
+     *  it. */
+    private static class Step {
+        /** The table joined. */
+        int table;
+        /** How it is joined. */
+        Method method;
+        /** The condition the join uses to find matching rows, or null
+         *  for a nested loop. */
+        Condition join;
+        /** The other conditions tested on the joined combinations. */
+        List<Condition> rest;
+        /** Estimated cost of this step. */
+        double cost;
+        /** For HASH, the positions of the rows of the table with each
+         *  key. */
+        HashMap<Object, IntList> buckets;
+        /** For BAND, the keys of the candidate rows, in increasing
+         *  order, and their positions. */
+        Object[] keys;
+        /** For BAND, the positions of the candidate rows in order of
+         *  key. */
+        int[] positions;
+    }
+
+    /** Choose the driving table and the order of, and methods for, the
+     *  joins of the others, with APPLIED marking the conditions tested
+     *  before any joins.  Return the estimated cost of the plan. */
+    private double plan(boolean[] applied) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int s = 0; s < _iterators.size(); s += 1) {
+            List<Step> steps = new ArrayList<Step>();
+            double cost = planFrom(s, applied.clone(), steps);
+            if (cost < best) {
+                best = cost;
+                _driving = s;
+                _steps = steps;
+            }
+        }
+        return best;
+    }
+
+    /** Add to STEPS the joins of a plan driven by table S, marking the
+     *  conditions they test in APPLIED, and return its estimated cost:
+     *  roughly, the number of rows read, hashed, compared, or looked up
+     *  in an index, beyond the single scan of each table. */
+    private double planFrom(int s, boolean[] applied, List<Step> steps) {
+        long joined = 1L << s;
+        double rows = estimate(s), cost = 0;
+        while (joined != (1L << _iterators.size()) - 1) {
+            int best = -1;
+            double bestRows = 0;
+            for (int t = 0; t < _iterators.size(); t += 1) {
+                if ((joined & (1L << t)) != 0) {
+                    continue;
+                }
+                double r = estimate(rows, joined, t);
+                if (best == -1 || r < bestRows) {
+                    best = t;
+                    bestRows = r;
+                }
+            }
+            Step step = step(rows, joined, best, applied);
+            steps.add(step);
+            cost += step.cost;
+            rows = bestRows;
+            joined |= 1L << best;
+        }
+        return cost;
+    }
+
+    /** Return the step that joins table T to the ROWS combinations
+     *  estimated to come from the tables in JOINED, marking the
+     *  conditions it tests in APPLIED. */
+    private Step step(double rows, long joined, int t, boolean[] applied) {
+        Step step = new Step();
+        step.table = t;
+        Condition equi = connecting(joined, t, "="),
+            band = connecting(joined, t, "<", "<=", ">", ">=");
+        double n = rows, m = estimate(t), log = Math.log(m + 1) / LOG2;
+        if (equi != null) {
+            step.join = equi;
+            step.method = Method.HASH;
+            step.cost = 2 * m + n;
+        } else if (band != null) {
+            step.join = band;
+            step.method = Method.BAND;
+            step.cost = (m + n) * log;
+        } else {
+            step.method = Method.NESTED;
+            step.cost = n * m;
+        }
+        if (step.join != null && indexed(t, step.join)) {
+            double cost = n * (1 + log) - m;
+            if (cost < step.cost) {
+                step.method = Method.INDEX;
+                step.cost = cost;
+            }
+        }
+        List<Condition> rest = applicable(joined | (1L << t), applied);
+        rest.remove(step.join);
+        step.rest = Condition.ordered(rest);
+        return step;
+    }
+
+    /** Return true iff COND, which connects table T to others, may be
+     *  evaluated by looking up the column of T in COND in an index: the
+     *  column must be indexed (with keys that compare as COND does), and
+     *  T must have no conditions of its own (which an IndexJoin would
+     *  not apply before looking up rows). */
+    private boolean indexed(int t, Condition cond) {
+        Column tCol = cond.left().source() == _iterators.get(t)
+            ? cond.left() : cond.right();
+        OrderedIndex index = tCol.source().table().index(tCol.index());
+        return _local.get(t).isEmpty() && index != null
+            && index.numeric() == cond.numeric();
+    }
+
+    /** Return the estimated number of rows of table T that satisfy the
+     *  conditions that mention only T. */
+    private double estimate(int t) {
+        double rows = _iterators.get(t).table().size();
+        for (Condition cond : _local.get(t)) {
+            rows *= cond.selectivity();
+        }
+        return rows;
+    }
+
+    /** Return the estimated number of combinations from joining ROWS
+     *  combinations of rows from the tables in JOINED with table T.
+     *  Without statistics about the data, an equality join is assumed to
+     *  match each row of the larger input about once (as for a foreign
+     *  key), an inequality join to keep a third of all pairs, and a
+     *  cross product keeps all of them. */
+    private double estimate(double rows, long joined, int t) {
+        double n = rows, m = estimate(t);
+        if (connecting(joined, t, "=") != null) {
+            return Math.max(n, m);
+        } else if (connecting(joined, t, "<", "<=", ">", ">=") != null) {
+            return n * m / 3;
+        } else {
+            return n * m;
+        }
+    }
+
+    /** Return a condition of the form C1 R C2, where one of the Cs is a
+     *  column of table T, the other is a column of a table in the bit
+     *  set JOINED, and R is one of RELATIONS.  Returns null if there is
+     *  none. */
+    private Condition connecting(long joined, int t, String... relations) {
+        for (Condition cond : _conditions) {
+            long m1 = mask(cond.left()), m2 = mask(cond.right());
+            long tm = 1L << t;
+            if (Arrays.asList(relations).contains(cond.relation())
+                && (m1 == tm && m2 != 0 && (m2 & ~joined) == 0
+                    || m2 == tm && m1 != 0 && (m1 & ~joined) == 0)) {
+                return cond;
+            }
+        }
+        return null;
+    }
+
+    /** Prepare the data my plan needs: the candidate rows of the driving
+     *  table and of each table joined other than through an index, and
+     *  the hash tables and sorted keys for the joins.  Return the number
+     *  of candidate rows of the driving table, or 0 if the result is
+     *  certainly empty. */
+    private int prepare() {
+        _rows = new IntList[_iterators.size()];
+        List<Condition> local = new ArrayList<Condition>(
+            _local.get(_driving));
+        _drivingRows = indexLookup(_driving, local);
+        if (_drivingRows != null) {
+            _drivingRows.sort();
+        }
+        _drivingFilter = Condition.ordered(local);
+        for (Step step : _steps) {
+            int t = step.table;
+            if (step.method == Method.INDEX) {
+                continue;
+            }
+            _rows[t] = pushdown(t);
+            if (size(t) == 0) {
+                return 0;
+            }
+            if (step.method == Method.HASH) {
+                hash(step);
+            } else if (step.method == Method.BAND) {
+                sort(step);
+            }
+        }
+        return _drivingRows == null
+            ? _iterators.get(_driving).table().size() : _drivingRows.size();
+    }
+
+    /** Return the column of the table joined by STEP in its join
+     *  condition. */
+    private Column innerColumn(Step step) {
+        Condition join = step.join;
+        return join.left().source() == _iterators.get(step.table)
+            ? join.left() : join.right();
+    }
+
+    /** Fill in the hash table of STEP, a hash join. */
+    private void hash(Step step) {
+        int t = step.table;
+        TableIterator iter = _iterators.get(t);
+        Column col = innerColumn(step);
+        boolean numeric = step.join.numeric();
+        step.buckets = new HashMap<Object, IntList>();
+        for (int j = 0; j < size(t); j += 1) {
+            iter.seek(rowAt(t, j));
+            bucket(step.buckets, col.key(numeric)).add(rowAt(t, j));
+        }
+    }
+
+    /** Fill in the sorted keys of STEP, a band join. */
+    private void sort(Step step) {
+        int t = step.table;
+        TableIterator iter = _iterators.get(t);
+        Column col = innerColumn(step);
+        boolean numeric = step.join.numeric();
+        Object[] keys = new Object[size(t)];
+        for (int j = 0; j < keys.length; j += 1) {
+            iter.seek(rowAt(t, j));
+            keys[j] = col.key(numeric);
+        }
+        int[] order = sortedOrder(keys);
+        step.keys = new Object[keys.length];
+        step.positions = new int[keys.length];
+        for (int i = 0; i < order.length; i += 1) {
+            step.keys[i] = keys[order[i]];
+            step.positions[i] = rowAt(t, order[i]);
+        }
+    }
+
+    /** Return the Operator that performs STEP on the combinations that
+     *  OUTER produces, using my iterators. */
+    private Operator join(Step step, Operator outer) {
+        int t = step.table;
+        TableIterator iter = _iterators.get(t);
+        List<Condition> rest = counterparts(step.rest);
+        if (step.method == Method.NESTED) {
+            return new NestedLoopJoin(outer, iter, _rows[t], size(t), rest);
+        }
+        Condition join = counterpart(step.join);
+        boolean tLeft = join.left().source() == iter;
+        Column tCol = tLeft ? join.left() : join.right(),
+            outerCol = tLeft ? join.right() : join.left();
+        switch (step.method) {
+        case HASH:
+            return new HashJoin(outer, iter, outerCol, join.numeric(),
+                                step.buckets, rest);
+        case BAND:
+            return new BandJoin(outer, iter, outerCol, join.numeric(),
+                                tLeft ? flipped(join.relation())
+                                : join.relation(),
+                                step.keys, step.positions, rest);
+        default:
+            return new IndexJoin(outer, iter, outerCol,
+                                 iter.table().index(tCol.index()),
+                                 tLeft ? join.relation()
+                                 : flipped(join.relation()),
+                                 rest);
+        }
+    }
+
+    /** Return the positions, in increasing order, of the rows of table T
+     *  that satisfy the conditions that mention only T, or null (meaning
+     *  all rows) if there are no such conditions. */
+    private IntList pushdown(int t) {
+        List<Condition> local = new ArrayList<Condition>(_local.get(t));
+        if (local.isEmpty()) {
+            return null;
+        }
+        IntList candidates = indexLookup(t, local);
+        if (candidates != null) {
+            candidates.sort();
+        }
+        List<Condition> ordered = Condition.ordered(local);
+        int n = candidates == null
+            ? _iterators.get(t).table().size() : candidates.size();
+        IntList result = new IntList();
+        List<IntList> parts = split(n, MIN_PART, (w, from, to) ->
+            w.filter(t, w.counterparts(ordered), candidates, from, to));
+        for (IntList part : parts) {
+            result.addAll(part);
+        }
+        return result;
+    }
+
+    /** Return the positions, in increasing order, of those of the rows
+     *  FROM to TO - 1 of table T that satisfy LOCAL, where row #i is
+     *  CANDIDATES.get(i), or just i if CANDIDATES is null. */
+    private IntList filter(int t, List<Condition> local, IntList candidates,
+                           int from, int to) {
+        TableIterator iter = _iterators.get(t);
+        Operator rows = new BatchScan(iter, candidates, from, to, local);
+        IntList result = new IntList();
+        while (rows.next()) {
+            result.add(iter.position());
+        }
+        return result;
+    }
+
+    /** Return the positions, in increasing order, of the rows of table T
+     *  that satisfy those of LOCAL (conditions mentioning only T) that
+     *  compare an indexed column of T with a literal, removing those
+     *  conditions from LOCAL.  All conditions on columns with bitmap
+     *  indices are used, together with those on a single OrderedIndex
+     *  (see orderedLookup).  Returns null if no condition can use an
+     *  index. */
+    private IntList indexLookup(int t, List<Condition> local) {
+        Bitmap bitmap = bitmapLookup(t, local);
+        IntList rows = orderedLookup(t, local);
+        if (bitmap == null) {
+            return rows;
+        }
+        if (rows != null) {
+            rows.sort();
+            bitmap = bitmap.and(Bitmap.of(rows));
+        }
+        return bitmap.toIntList();
+    }
+
+    /** Return the set of rows of table T that satisfy those of LOCAL
+     *  that compare a column of T having a BitmapIndex with a literal,
+     *  removing those conditions from LOCAL, or null if there are none.
+     *  The set is the intersection of the rows satisfying each condition
+     *  other than !=, less the rows having the values excluded by !=
+     *  conditions, so that no row is examined. */
+    private Bitmap bitmapLookup(int t, List<Condition> local) {
+        Table table = _iterators.get(t).table();
+        Bitmap result = null;
+        List<Bitmap> excluded = new ArrayList<Bitmap>();
+        for (int i = local.size() - 1; i >= 0; i -= 1) {
+            Condition cond = local.get(i);
+            Column col = literalComparison(cond);
+            BitmapIndex index =
+                col == null ? null : table.bitmapIndex(col.index());
+            if (index == null || index.numeric() != cond.numeric()) {
+                continue;
+            }
+            local.remove(i);
+            String rel = columnRelation(cond, col);
+            String value = literalValue(cond, col);
+            if (rel.equals("!=")) {
+                excluded.add(index.lookup("=", value));
+            } else {
+                Bitmap rows = index.lookup(rel, value);
+                result = result == null ? rows : result.and(rows);
+            }
+        }
+        if (result == null && excluded.isEmpty()) {
+            return null;
+        }
+        if (result == null) {
+            result = Bitmap.range(table.size());
+        }
+        for (Bitmap rows : excluded) {
+            result = result.andNot(rows);
+        }
+        return result;
+    }
+
+    /** Return the positions of the rows of table T that satisfy those of
+     *  LOCAL (conditions mentioning only T) that compare a column of T
+     *  having an OrderedIndex with a literal, removing those conditions
+     *  from LOCAL.  Uses a single index, preferring one on a column tested
+     *  for equality.  Returns null if no condition can use an index. */
+    private IntList orderedLookup(int t, List<Condition> local) {
+        Table table = _iterators.get(t).table();
+        OrderedIndex index = null;
+        for (Condition cond : local) {
+            Column col = indexedColumn(cond);
+            if (col != null && (index == null
+                                || cond.relation().equals("="))) {
+                index = table.index(col.index());
+            }
+        }
+        if (index == null) {
+            return null;
+        }
+        Object lo = null, hi = null;
+        boolean loIncl = false, hiIncl = false;
+        for (int i = local.size() - 1; i >= 0; i -= 1) {
+            Condition cond = local.get(i);
+            Column col = indexedColumn(cond);
+            if (col == null || col.index() != index.column()) {
+                continue;
+            }
+            local.remove(i);
+            String rel = columnRelation(cond, col);
+            Object key = index.key(literalValue(cond, col));
+            boolean incl = rel.endsWith("=");
+            if (!rel.startsWith("<")) {
+                int c = lo == null ? 1 : index.compare(key, lo);
+                if (c > 0) {
+                    lo = key;
+                    loIncl = incl;
+                } else if (c == 0) {
+                    loIncl &= incl;
+                }
+            }
+            if (!rel.startsWith(">")) {
+                int c = hi == null ? -1 : index.compare(key, hi);
+                if (c < 0) {
+                    hi = key;
+                    hiIncl = incl;
+                } else if (c == 0) {
+                    hiIncl &= incl;
+                }
+            }
+        }
+        return index.lookup(lo, loIncl, hi, hiIncl);
+    }
+
+    /** Return the relation of COND, which compares its column COL with
+     *  a literal (see literalComparison), as if COL were on the left. */
+    private static String columnRelation(Condition cond, Column col) {
+        return col == cond.left() ? cond.relation()
+            : flipped(cond.relation());
+    }
+
+    /** Return the value of the literal that COND compares with its
+     *  column COL (see literalComparison).  Only the literal is read,
+     *  since COL has no current row when the planner runs. */
+    private static String literalValue(Condition cond, Column col) {
+        return (col == cond.left() ? cond.right() : cond.left()).value();
+    }
+
+    /** Return the column of COND that has an OrderedIndex, if COND compares
+     *  that column with a literal using a relation other than !=.
+     *  Otherwise, return null. */
+    private static Column indexedColumn(Condition cond) {
+        if (cond.relation().equals("!=")) {
+            return null;
+        }
+        Column col = literalComparison(cond);
+        if (col == null || col.source().table().index(col.index()) == null) {
+            return null;
+        }
+        return col;
+    }
+
+    /** Return the column of COND that is compared with a literal, if
+     *  COND compares a column with a literal.  Otherwise, return null. */
+    private static Column literalComparison(Condition cond) {
+        Column col;
+        if (cond.right() instanceof Literal) {
+            col = cond.left();
+        } else if (cond.left() instanceof Literal) {
+            col = cond.right();
+        } else {
+            return null;
+        }
+        return col instanceof Literal ? null : col;
+    }
+
+    /** Return the number of rows of table T that survive pushdown. */
+    private int size(int t) {
+        if (_rows[t] == null) {
+            return _iterators.get(t).table().size();
+        }
+        return _rows[t].size();
+    }
+
+    /** Return the position of the Jth row of table T that survives
+     *  pushdown. */
+    private int rowAt(int t, int j) {
+        return _rows[t] == null ? j : _rows[t].get(j);
+    }
+
+    /** Work on a range of indices, done with a worker's iterators. */
+    private interface Part<T> {
+        /** Return the result of my work on indices FROM to TO - 1, using
+         *  the iterators and conditions of WORKER. */
+        T run(Planner worker, int from, int to);
+    }
+
+    /** Return the results of BODY on consecutive ranges that together
+     *  cover 0 .. N-1, in order.  With parallelism 1, or when N is less
+     *  than twice MIN, BODY runs once, over the whole range, with me as
+     *  its worker.  Otherwise the ranges, each of at least MIN indices,
+     *  run in parallel, each on a new worker. */
+    private <T> List<T> split(int n, int min, Part<T> body) {
+        List<T> results = new ArrayList<T>();
+        int parts = (int) Math.min((long) _parallelism * TASKS_PER_THREAD,
+                                   n / Math.max(1, min));
+        if (_parallelism <= 1 || parts <= 1) {
+            results.add(body.run(this, 0, n));
+            return results;
+        }
+        if (_pool == null) {
+            _pool = new ForkJoinPool(_parallelism);
+        }
+        List<Callable<T>> tasks = new ArrayList<Callable<T>>();
+        for (int p = 0; p < parts; p += 1) {
+            int from = (int) ((long) n * p / parts),
+                to = (int) ((long) n * (p + 1) / parts);
+            tasks.add(() -> body.run(new Planner(this), from, to));
+        }
+        try {
+            for (Future<T> future : _pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw error("select interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw error("select failed: %s", e.getCause());
+        }
+        return results;
+    }
+
+    /** Return my copy of COND, one of my parent's conditions, or COND
+     *  itself if I am not a worker. */
+    private Condition counterpart(Condition cond) {
+        if (_parent == null) {
+            return cond;
+        }
+        return _conditions.get(_parent._conditions.indexOf(cond));
+    }
+
+    /** Return my copies of CONDS (see counterpart). */
+    private List<Condition> counterparts(List<Condition> conds) {
+        if (_parent == null) {
+            return conds;
+        }
+        List<Condition> result = new ArrayList<Condition>();
+        for (Condition cond : conds) {
+            result.add(counterpart(cond));
+        }
+        return result;
+    }
+
+    /** Return COL, resolved to one of my parent's iterators, bound to
+     *  the corresponding one of mine (or COL itself if I am not a
+     *  worker). */
+    private Column counterpart(Column col) {
+        if (_parent == null) {
+            return col;
+        }
+        return col.bound(_parent._iterators, _iterators);
+    }
+
+    /** Return the conditions not yet marked in APPLIED whose columns all
+     *  come from the tables in the bit set JOINED, marking them in
+     *  APPLIED. */
+    private List<Condition> applicable(long joined, boolean[] applied) {
+        List<Condition> result = new ArrayList<Condition>();
+        for (int i = 0; i < _conditions.size(); i += 1) {
+            if (!applied[i] && (_masks[i] & ~joined) == 0) {
+                applied[i] = true;
+                result.add(_conditions.get(i));
+            }
+        }
+        return result;
+    }
+
+    /** Return the list of BUCKETS for KEY, creating it if needed. */
+    private static IntList bucket(HashMap<Object, IntList> buckets,
+                                  Object key) {
+        IntList bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new IntList();
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    /** Return the relation R' such that A R' B iff B REL A. */
+    private static String flipped(String rel) {
+        switch (rel) {
+        case "<":
+            return ">";
+        case "<=":
+            return ">=";
+        case ">":
+            return "<";
+        case ">=":
+            return "<=";
+        default:
+            return rel;
+        }
+    }
+
+    /** Return the indices of KEYS ordered by increasing key. */
+    private static int[] sortedOrder(Object[] keys) {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Column.compareKeys(keys[a], keys[b]));
+        int[] result = new int[keys.length];
+        for (int i = 0; i < keys.length; i += 1) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /** Return the bit set of my iterators that COL is resolved to: empty
+     *  for a Literal. */
+    private long mask(Column col) {
+        int t = _iterators.indexOf(col.source());
+        return t == -1 ? 0 : 1L << t;
+    }
+
+    /** Smallest amount of work worth handing to a worker, roughly in
+     *  rows. */
+    private static final int MIN_PART = 1 << 12;
+    /** Number of ranges into which a loop is divided per thread, so that
+     *  threads that finish early can take on more work. */
+    private static final int TASKS_PER_THREAD = 4;
+    /** The natural logarithm of 2. */
+    private static final double LOG2 = Math.log(2);
+
+    /** The iterators over the tables being joined. */
+    private final List<TableIterator> _iterators;
+    /** The conditions selected rows must satisfy. */
+    private final List<Condition> _conditions;
+    /** _masks[i] is the bit set of the iterators that the columns of
+     *  condition #i refer to. */
+    private final long[] _masks;
+    /** _local.get(t) holds the conditions that mention only table #t. */
+    private List<List<Condition>> _local;
+    /** _rows[t] holds the positions of the rows of table #t that satisfy
+     *  the conditions mentioning only that table, or is null if there are
+     *  no such conditions or the table is not read in advance. */
+    private IntList[] _rows;
+    /** The table scanned by my plan. */
+    private int _driving;
+    /** Positions of the candidate rows of the driving table (found with
+     *  an index), or null if all rows are candidates. */
+    private IntList _drivingRows;
+    /** Conditions on the driving table not already satisfied by the
+     *  candidate rows. */
+    private List<Condition> _drivingFilter;
+    /** The joins in my plan, in order. */
+    private List<Step> _steps;
+    /** Maximum number of threads to use. */
+    private final int _parallelism;
+    /** The planner I am a worker for, or null if I am not a worker. */
+    private final Planner _parent;
+    /** The threads running my workers, if they have been started. */
+    private ForkJoinPool _pool;
+}
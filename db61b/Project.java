@@ -0,0 +1,68 @@
+package db61b;
+
+import java.util.List;
+
+/** A RowSource producing, for each combination of its input, the Row of
+ *  values of a list of Columns.
+ *  @author Yasaman Bahri
+ */
+class Project implements RowSource {
+
+    /** A RowSource producing the values of COLUMNS, which must be
+     *  resolved to iterators moved by INPUT, for each combination that
+     *  INPUT produces. */
+    Project(Operator input, List<Column> columns) {
+        _input = input;
+        _columns = columns;
+    }
+
+    @Override
+    public boolean next() {
+        return _input.next();
+    }
+
+    @Override
+    public void close() {
+        _input.close();
+    }
+
+    /** Return my current Row.  The values of numeric columns kept as
+     *  vectors are read as numbers, and converted to Strings only if
+     *  the Row's consumer asks for them as such. */
+    @Override
+    public Row row() {
+        if (_types == null) {
+            _types = new ColumnType[_columns.size()];
+            for (int k = 0; k < _types.length; k += 1) {
+                Column col = _columns.get(k);
+                if (col.vector() != null && col.type().isNumeric()) {
+                    _types[k] = col.type();
+                    _numeric = true;
+                }
+            }
+        }
+        if (!_numeric) {
+            return Row.make(_columns);
+        }
+        String[] data = new String[_types.length];
+        double[] numbers = new double[_types.length];
+        for (int k = 0; k < _types.length; k += 1) {
+            if (_types[k] == null) {
+                data[k] = _columns.get(k).value();
+            } else {
+                numbers[k] = _columns.get(k).number();
+            }
+        }
+        return new Row(data, numbers, _types);
+    }
+
+    /** My input. */
+    private final Operator _input;
+    /** The columns whose values I produce. */
+    private final List<Column> _columns;
+    /** The type of each of _columns that I read as numbers, and null
+     *  for the others; null until my first Row. */
+    private ColumnType[] _types;
+    /** True iff I read any of _columns as numbers. */
+    private boolean _numeric;
+}
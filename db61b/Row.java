@@ -13,6 +13,16 @@ class Row {
         _data = data;
     }
 
+    /** A Row whose value in column K is DATA[K] or, where that is null,
+     *  the number NUMBERS[K] as a value of type TYPES[K], which is
+     *  converted to a String only when asked for.  Neither array may be
+     *  altered subsequently. */
+    Row(String[] data, double[] numbers, ColumnType[] types) {
+        _data = data;
+        _numbers = numbers;
+        _types = types;
+    }
+
     /** Return a Row formed from the current values of COLUMNS (in order).
      *  COLUMNS must all have been resolved to non-empty TableIterators. */
     static Row make(List<Column> columns) {
@@ -37,13 +47,38 @@ class Row {
 
     /** Return the value of my Kth column.  Requires that 0 <= K < size(). */
     String get(int k) {
-        return _data[k];
+        String value = _data[k];
+        if (value == null) {
+            value = _types[k].format(_numbers[k]);
+            _data[k] = value;
+        }
+        return value;
+    }
+
+    /** Return the value of my Kth column as a number, which it must be,
+     *  without converting it to and from a String if I was given it as
+     *  one.  Requires that 0 <= K < size(). */
+    double number(int k) {
+        if (_numbers != null && _types[k] != null) {
+            return _numbers[k];
+        }
+        return ColumnType.parseDouble(_data[k]);
+    }
+
+    /** Return my values, converting any I hold as numbers to Strings. */
+    private String[] data() {
+        if (_numbers != null) {
+            for (int k = 0; k < _data.length; k += 1) {
+                get(k);
+            }
+        }
+        return _data;
     }
 
     @Override
     public boolean equals(Object obj) {
         try {
-            return Arrays.equals(_data, ((Row) obj)._data);
+            return Arrays.equals(data(), ((Row) obj).data());
         } catch (ClassCastException e) {
             return false;
         }
@@ -59,9 +94,15 @@ class Row {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(_data);
+        return Arrays.hashCode(data());
     }
 
-    /** Contents of this row. */
+    /** Contents of this row.  A null entry stands for the value in
+     *  _numbers, converted when first asked for (by any thread, since
+     *  all would convert it alike). */
     private String[] _data;
+    /** The values I hold as numbers, or null if there are none. */
+    private double[] _numbers;
+    /** The type of each value I hold as a number, and otherwise null. */
+    private ColumnType[] _types;
 }
@@ -0,0 +1,44 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** A sequence of rows in canonical form, each with its hash code, as
+ *  prepared by one thread for another to add to a Table (see
+ *  Table.addCanonical).
+ *  @author Yasaman Bahri
+ */
+class RowBatch {
+
+    /** Return my number of rows. */
+    int size() {
+        return _size;
+    }
+
+    /** Return my row #K. */
+    Row row(int k) {
+        return _rows[k];
+    }
+
+    /** Return the hash code of my row #K. */
+    int hash(int k) {
+        return _hashes[k];
+    }
+
+    /** Append ROW, whose hash code is HASH. */
+    void add(Row row, int hash) {
+        if (_size == _rows.length) {
+            _rows = Arrays.copyOf(_rows, 2 * _size);
+            _hashes = Arrays.copyOf(_hashes, 2 * _size);
+        }
+        _rows[_size] = row;
+        _hashes[_size] = hash;
+        _size += 1;
+    }
+
+    /** My rows are _rows[0 .. _size-1]. */
+    private Row[] _rows = new Row[16];
+    /** _hashes[k] is the hash code of _rows[k]. */
+    private int[] _hashes = new int[16];
+    /** Number of rows. */
+    private int _size;
+}
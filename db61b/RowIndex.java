@@ -0,0 +1,108 @@
+package db61b;
+
+/** A hash set of the rows of a TableStore, used to reject duplicates.
+ *  The set records only row positions (and their hashes), so it costs
+ *  two ints per slot no matter how the store represents rows.
+ *  @author Yasaman Bahri
+ */
+class RowIndex {
+
+    /** An index of the rows in STORE, which is initially empty. */
+    RowIndex(TableStore store) {
+        _store = store;
+        _slots = new int[INITIAL_SIZE];
+        _hashes = new int[INITIAL_SIZE];
+    }
+
+    /** Return true iff ROW, whose hashCode is HASH, equals a row
+     *  recorded in me. */
+    boolean contains(Row row, int hash) {
+        return find(row, hash) >= 0;
+    }
+
+    /** Return the position in my store of the recorded row equal to ROW,
+     *  whose hashCode is HASH, or -1 if there is none. */
+    int find(Row row, int hash) {
+        int mask = _slots.length - 1;
+        for (int i = spread(hash) & mask; _slots[i] != 0;
+             i = (i + 1) & mask) {
+            if (_hashes[i] == hash && _store.rowEquals(_slots[i] - 1, row)) {
+                return _slots[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Record that the row at POS of my store, whose hash is HASH, is
+     *  present.  It must not already be recorded. */
+    void insert(int pos, int hash) {
+        if (2 * (_count + 1) > _slots.length) {
+            grow();
+        }
+        int mask = _slots.length - 1;
+        int i = spread(hash) & mask;
+        while (_slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        _slots[i] = pos + 1;
+        _hashes[i] = hash;
+        _count += 1;
+    }
+
+    /** Make room for N more rows, so that recording them will not
+     *  rehash the rows already recorded more than once. */
+    void reserve(int n) {
+        int size = _slots.length;
+        while (2L * (_count + n) > size && size < 1 << 30) {
+            size *= 2;
+        }
+        if (size > _slots.length) {
+            grow(size);
+        }
+    }
+
+    /** Double the number of my slots, rehashing the recorded rows. */
+    private void grow() {
+        grow(2 * _slots.length);
+    }
+
+    /** Increase the number of my slots to SIZE, a power of 2, rehashing
+     *  the recorded rows. */
+    private void grow(int size) {
+        int[] oldSlots = _slots, oldHashes = _hashes;
+        _slots = new int[size];
+        _hashes = new int[size];
+        int mask = _slots.length - 1;
+        for (int j = 0; j < oldSlots.length; j += 1) {
+            if (oldSlots[j] != 0) {
+                int i = spread(oldHashes[j]) & mask;
+                while (_slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                _slots[i] = oldSlots[j];
+                _hashes[i] = oldHashes[j];
+            }
+        }
+    }
+
+    /** Return HASH with its bits mixed, so that hashes differing only in
+     *  their high bits (as is common for Row.hashCode) do not crowd into
+     *  neighboring slots. */
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Initial number of slots (a power of 2). */
+    private static final int INITIAL_SIZE = 16;
+
+    /** The store whose rows I index. */
+    private final TableStore _store;
+    /** Open-addressed hash table of row positions plus one; 0 marks an
+     *  empty slot. */
+    private int[] _slots;
+    /** _hashes[i] is the hash of the row in _slots[i]. */
+    private int[] _hashes;
+    /** Number of rows recorded. */
+    private int _count;
+}
@@ -0,0 +1,12 @@
+package db61b;
+
+/** An Operator that produces Rows, such as Project, rather than
+ *  combinations of positions in tables.
+ *  @author Yasaman Bahri
+ */
+interface RowSource extends Operator {
+
+    /** Return the current Row, which is valid after next has returned
+     *  true. */
+    Row row();
+}
@@ -0,0 +1,79 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** A TableStore that keeps each row as a separate Row object.
+ *  @author Yasaman Bahri
+ */
+class RowStore implements TableStore {
+
+    /** An empty store. */
+    RowStore() {
+        this(new Row[16], 0, false);
+    }
+
+    /** A store of the first SIZE of ROWS, which is read-only iff
+     *  READONLY. */
+    private RowStore(Row[] rows, int size, boolean readOnly) {
+        _rows = rows;
+        _size = size;
+        _readOnly = readOnly;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public String get(int row, int col) {
+        return _rows[row].get(col);
+    }
+
+    @Override
+    public Row row(int k) {
+        return _rows[k];
+    }
+
+    @Override
+    public void add(Row row) {
+        reserve(1);
+        _rows[_size] = row;
+        _size += 1;
+    }
+
+    @Override
+    public void reserve(int n) {
+        if (_size + n > _rows.length) {
+            _rows = Arrays.copyOf(_rows, ColumnVector.grown(_rows.length,
+                                                            _size + n));
+        }
+    }
+
+    @Override
+    public int hash(int k) {
+        return _rows[k].hashCode();
+    }
+
+    @Override
+    public boolean rowEquals(int k, Row row) {
+        return _rows[k].equals(row);
+    }
+
+    @Override
+    public boolean readOnly() {
+        return _readOnly;
+    }
+
+    @Override
+    public TableStore snapshot() {
+        return new RowStore(_rows, _size, true);
+    }
+
+    /** My rows, in order of insertion, are _rows[0 .. _size-1]. */
+    private Row[] _rows;
+    /** Number of rows stored. */
+    private int _size;
+    /** True iff I am a snapshot, which may not be added to. */
+    private final boolean _readOnly;
+}
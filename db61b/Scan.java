@@ -0,0 +1,36 @@
+package db61b;
+
+/** An Operator that produces the rows of one table.
+ *  @author Yasaman Bahri
+ */
+class Scan implements Operator {
+
+    /** An Operator producing rows FROM to TO - 1 of ITER's table, in
+     *  order, where row #i is at position ROWS.get(i), or at position i
+     *  if ROWS is null. */
+    Scan(TableIterator iter, IntList rows, int from, int to) {
+        _iter = iter;
+        _rows = rows;
+        _next = from;
+        _to = to;
+    }
+
+    @Override
+    public boolean next() {
+        if (_next >= _to) {
+            return false;
+        }
+        _iter.seek(_rows == null ? _next : _rows.get(_next));
+        _next += 1;
+        return true;
+    }
+
+    /** Iterator over my table. */
+    private final TableIterator _iter;
+    /** Positions of the rows I range over, or null for all rows. */
+    private final IntList _rows;
+    /** Index of the next row to produce. */
+    private int _next;
+    /** Index just past the last row to produce. */
+    private final int _to;
+}
@@ -0,0 +1,111 @@
+package db61b;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** A db61b server, which accepts connections on a port of the local
+ *  host and runs a session for each: a CommandInterpreter reading
+ *  statements from the connection and writing its output back to it,
+ *  as Main does for the standard input and output.  All sessions share
+ *  one Catalog, so that tables loaded or created in one are visible to
+ *  the others.  Statements that only read tables run concurrently with
+ *  each other and with writes, each against the version of the tables
+ *  committed when it started.  Each statement is read in full before it
+ *  runs, so that a slow client cannot hold the catalog's write lock
+ *  while the rest of its statement arrives.  Each session runs on its
+ *  own thread.
+ *  @author Yasaman Bahri
+ */
+class Server {
+
+    /** A server listening on local port PORT, whose sessions share
+     *  CATALOG. */
+    Server(int port, Catalog catalog) throws IOException {
+        _socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        _catalog = catalog;
+    }
+
+    /** Return the port on which I listen. */
+    int port() {
+        return _socket.getLocalPort();
+    }
+
+    /** Accept connections and run a session for each until I am
+     *  closed. */
+    void serve() {
+        ExecutorService sessions = Executors.newCachedThreadPool();
+        try {
+            while (true) {
+                Socket connection = _socket.accept();
+                sessions.execute(() -> session(connection));
+            }
+        } catch (IOException excp) {
+            /* Closed: stop accepting. */
+        } finally {
+            sessions.shutdown();
+        }
+    }
+
+    /** Stop accepting connections.  Sessions already running continue
+     *  until their clients finish. */
+    void close() throws IOException {
+        _socket.close();
+    }
+
+    /** Run a session reading statements from CONNECTION and writing the
+     *  results to it, until the client quits or closes it.  A statement
+     *  that fails with a DBException is reported to the client, as Main
+     *  reports it, and the session goes on.  Any other RuntimeException
+     *  is a bug, which may have left the session in any state: it is
+     *  logged on the standard error, the client is told only that the
+     *  statement failed, and the session is closed. */
+    private void session(Socket connection) {
+        try (Socket socket = connection) {
+            PrintStream out =
+                new PrintStream(new BufferedOutputStream(
+                                    socket.getOutputStream()),
+                                false, StandardCharsets.UTF_8);
+            CommandInterpreter interpreter =
+                new CommandInterpreter(_catalog,
+                                       new InputStreamReader(
+                                           socket.getInputStream(),
+                                           StandardCharsets.UTF_8),
+                                       out, out);
+            out.printf("DB61B System.  Version %s.%n", Main.VERSION);
+            while (true) {
+                try {
+                    interpreter.readStatement();
+                    if (!interpreter.statement()) {
+                        break;
+                    }
+                } catch (DBException e) {
+                    out.printf("Error: %s%n", e.getMessage());
+                    interpreter.skipCommand();
+                } catch (RuntimeException e) {
+                    System.err.printf("Error: session on %s failed:%n",
+                                      socket.getRemoteSocketAddress());
+                    e.printStackTrace();
+                    out.printf("Error: internal error; closing session%n");
+                    break;
+                }
+                out.flush();
+            }
+            out.flush();
+        } catch (IOException excp) {
+            /* The client has gone: end the session. */
+        }
+    }
+
+    /** The socket on which I accept connections. */
+    private final ServerSocket _socket;
+    /** The tables shared by my sessions. */
+    private final Catalog _catalog;
+}
@@ -0,0 +1,403 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/** A RowSource producing the rows of its input in sorted order, using
+ *  an external merge sort.  Rows are gathered in memory until their
+ *  estimated size exceeds a budget; each such batch is then sorted and
+ *  written to a temporary file (a SpillFile) as a sorted run.  Once the
+ *  input is exhausted, the runs (and the rows still in memory) are
+ *  merged.  When there are more than FAN_IN runs, groups of FAN_IN are
+ *  first merged into longer runs, so that the number of files open at
+ *  once stays bounded.  If everything fits in the budget, nothing is
+ *  written.
+ *
+ *  Optionally, duplicate rows are dropped as well.  Since the order used
+ *  must be total on distinct rows (see order), duplicates are adjacent
+ *  in every run and in the merged output, so this takes no extra
+ *  memory.
+ *
+ *  When only the first few rows are wanted and duplicates are dropped,
+ *  the input is instead reduced as it is read to the rows that belong
+ *  among the first ones, held in a bounded ordered set (a top-K
+ *  selection), so that nothing is written and memory is proportional
+ *  to the number of rows wanted rather than to the input.
+ *  @author Yasaman Bahri
+ */
+class Sort implements RowSource {
+
+    /** Maximum number of runs merged at once. */
+    static final int FAN_IN = 64;
+    /** Estimated memory used by a Row apart from its values. */
+    private static final int ROW_OVERHEAD = 48;
+    /** Estimated memory used by a value apart from its characters. */
+    private static final int VALUE_OVERHEAD = 48;
+
+    /** A RowSource producing the rows of INPUT in the order given by
+     *  ORDER, without duplicates if DISTINCT, holding rows of up to about
+     *  MEMORY bytes in memory at a time. */
+    Sort(RowSource input, Order order, long memory, boolean distinct) {
+        this(input, order, memory, distinct, -1);
+    }
+
+    /** A RowSource producing the first LIMIT rows of INPUT in the order
+     *  given by ORDER, or all of them if LIMIT is negative, without
+     *  duplicates if DISTINCT, holding rows of up to about MEMORY bytes
+     *  in memory at a time. */
+    Sort(RowSource input, Order order, long memory, boolean distinct,
+         long limit) {
+        _input = input;
+        _order = order;
+        _compare = (a, b) -> order.compare(a.row, a.keys, b.row, b.keys);
+        _memory = memory;
+        _distinct = distinct;
+        _remaining = limit < 0 ? Long.MAX_VALUE : limit;
+    }
+
+    /** Return an order on rows that compares columns COLUMNS[0],
+     *  COLUMNS[1], ... in turn, numerically where NUMERIC is true and in
+     *  decreasing order where DESCENDING is true, and breaks any
+     *  remaining ties by comparing all columns as strings, so that only
+     *  equal rows compare equal. */
+    static Order order(int[] columns, boolean[] numeric,
+                       boolean[] descending) {
+        return new Order(columns, numeric, descending);
+    }
+
+    /** An order on rows (see order).  The numeric columns of a row are
+     *  parsed once, by keys, into the doubles that are compared. */
+    static class Order {
+        /** The order described by COLUMNS, NUMERIC and DESCENDING (see
+         *  order). */
+        Order(int[] columns, boolean[] numeric, boolean[] descending) {
+            _columns = columns;
+            _numeric = numeric;
+            _descending = descending;
+        }
+
+        /** Return the keys of ROW: the values of the columns I compare,
+         *  as numbers where they are compared numerically. */
+        double[] keys(Row row) {
+            double[] keys = new double[_columns.length];
+            for (int i = 0; i < keys.length; i += 1) {
+                if (_numeric[i]) {
+                    keys[i] = row.number(_columns[i]);
+                }
+            }
+            return keys;
+        }
+
+        /** Compare row A, whose keys are X, with row B, whose keys are
+         *  Y. */
+        int compare(Row a, double[] x, Row b, double[] y) {
+            for (int i = 0; i < _columns.length; i += 1) {
+                int c = _numeric[i] ? Double.compare(x[i], y[i])
+                    : a.get(_columns[i]).compareTo(b.get(_columns[i]));
+                if (c != 0) {
+                    return _descending[i] ? -c : c;
+                }
+            }
+            for (int k = 0; k < a.size(); k += 1) {
+                int c = a.get(k).compareTo(b.get(k));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        }
+
+        /** The columns compared, in turn. */
+        private final int[] _columns;
+        /** Which of _columns are compared numerically. */
+        private final boolean[] _numeric;
+        /** Which of _columns are compared in decreasing order. */
+        private final boolean[] _descending;
+    }
+
+    /** A row decorated with its keys (see Order.keys). */
+    private static class Keyed {
+        /** Row R, with its keys by ORDER. */
+        Keyed(Row r, Order order) {
+            row = r;
+            keys = order.keys(r);
+        }
+
+        /** The row. */
+        final Row row;
+        /** Its keys. */
+        final double[] keys;
+    }
+
+    @Override
+    public boolean next() {
+        if (_merged == null) {
+            _merged = _distinct && _remaining < Integer.MAX_VALUE
+                ? top() : sort();
+        }
+        while (_remaining > 0 && _merged.next()) {
+            Keyed row = _merged.row();
+            if (!_distinct || _row == null
+                || _compare.compare(_row, row) != 0) {
+                _row = row;
+                _remaining -= 1;
+                return true;
+            }
+        }
+        _merged.close();
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (_merged != null) {
+            _merged.close();
+        }
+        _input.close();
+    }
+
+    @Override
+    public Row row() {
+        return _row.row;
+    }
+
+    /** Read all of my input, spilling sorted runs as needed, and return
+     *  the merge of the runs. */
+    private Run sort() {
+        List<Run> runs = new ArrayList<Run>();
+        List<Keyed> rows = new ArrayList<Keyed>();
+        long size = 0;
+        try {
+            while (_input.next()) {
+                Row row = _input.row();
+                rows.add(new Keyed(row, _order));
+                size += ROW_OVERHEAD;
+                for (int k = 0; k < row.size(); k += 1) {
+                    size += VALUE_OVERHEAD + row.get(k).length();
+                }
+                if (size > _memory) {
+                    runs.add(spill(new MemoryRun(sorted(rows))));
+                    rows = new ArrayList<Keyed>();
+                    size = 0;
+                }
+            }
+            runs.add(new MemoryRun(sorted(rows)));
+            while (runs.size() > FAN_IN) {
+                List<Run> group =
+                    new ArrayList<Run>(runs.subList(0, FAN_IN));
+                runs.subList(0, FAN_IN).clear();
+                runs.add(spill(new Merge(group, _compare)));
+            }
+            return runs.size() == 1 ? runs.get(0)
+                : new Merge(runs, _compare);
+        } catch (RuntimeException e) {
+            for (Run run : runs) {
+                run.close();
+            }
+            throw e;
+        }
+    }
+
+    /** Read all of my input and return a Run of the first _remaining
+     *  distinct rows in order. */
+    private Run top() {
+        TreeSet<Keyed> top = new TreeSet<Keyed>(_compare);
+        while (_input.next()) {
+            Keyed row = new Keyed(_input.row(), _order);
+            if (top.size() < _remaining) {
+                top.add(row);
+            } else if (_remaining > 0
+                       && _compare.compare(row, top.last()) < 0
+                       && top.add(row)) {
+                top.pollLast();
+            }
+        }
+        return new MemoryRun(new ArrayList<Keyed>(top));
+    }
+
+    /** Return ROWS, sorted. */
+    private List<Keyed> sorted(List<Keyed> rows) {
+        rows.sort(_compare);
+        return rows;
+    }
+
+    /** Write the rows of RUN (without duplicates if I am distinct) to a
+     *  temporary file, and return a Run that reads them back. */
+    private Run spill(Run run) {
+        SpillFile file = new SpillFile();
+        try {
+            Keyed last = null;
+            while (run.next()) {
+                Keyed row = run.row();
+                if (!_distinct || last == null
+                    || _compare.compare(last, row) != 0) {
+                    file.write(row.row);
+                    last = row;
+                }
+            }
+            file.finish();
+        } catch (RuntimeException e) {
+            file.close();
+            throw e;
+        } finally {
+            run.close();
+        }
+        return new FileRun(file, _order);
+    }
+
+    /** A sorted sequence of rows, with their keys. */
+    private interface Run {
+        /** Advance to my next row, returning false if there is none. */
+        boolean next();
+
+        /** Return my current row. */
+        Keyed row();
+
+        /** Release my resources. */
+        void close();
+    }
+
+    /** A Run held in memory. */
+    private static class MemoryRun implements Run {
+        /** A Run of ROWS, which are sorted. */
+        MemoryRun(List<Keyed> rows) {
+            _rows = rows;
+        }
+
+        @Override
+        public boolean next() {
+            if (_i >= _rows.size()) {
+                return false;
+            }
+            _row = _rows.get(_i);
+            _rows.set(_i, null);
+            _i += 1;
+            return true;
+        }
+
+        @Override
+        public Keyed row() {
+            return _row;
+        }
+
+        @Override
+        public void close() {
+            _rows.clear();
+        }
+
+        /** My rows, each cleared once it is consumed. */
+        private final List<Keyed> _rows;
+        /** Index of my next row. */
+        private int _i;
+        /** My current row. */
+        private Keyed _row;
+    }
+
+    /** A Run read back from a SpillFile, which is deleted when the run
+     *  is closed.  The keys of each row are computed again as it is
+     *  read. */
+    private static class FileRun implements Run {
+        /** A Run of the rows in FILE, which is finished, and whose keys
+         *  are given by ORDER. */
+        FileRun(SpillFile file, Order order) {
+            _file = file;
+            _order = order;
+        }
+
+        @Override
+        public boolean next() {
+            if (!_file.next()) {
+                return false;
+            }
+            _row = new Keyed(_file.row(), _order);
+            return true;
+        }
+
+        @Override
+        public Keyed row() {
+            return _row;
+        }
+
+        @Override
+        public void close() {
+            _file.close();
+        }
+
+        /** My file. */
+        private final SpillFile _file;
+        /** The order giving the keys of my rows. */
+        private final Order _order;
+        /** My current row. */
+        private Keyed _row;
+    }
+
+    /** The merge of several Runs. */
+    private static class Merge implements Run {
+        /** The merge of RUNS, each sorted by ORDER. */
+        Merge(List<Run> runs, Comparator<Keyed> order) {
+            _runs = runs;
+            _heap = new PriorityQueue<Run>(Math.max(1, runs.size()),
+                                           (a, b) -> order.compare(a.row(),
+                                                                   b.row()));
+        }
+
+        @Override
+        public boolean next() {
+            if (!_started) {
+                _started = true;
+                for (Run run : _runs) {
+                    if (run.next()) {
+                        _heap.add(run);
+                    }
+                }
+            } else if (_current != null) {
+                if (_current.next()) {
+                    _heap.add(_current);
+                }
+            }
+            _current = _heap.poll();
+            return _current != null;
+        }
+
+        @Override
+        public Keyed row() {
+            return _current.row();
+        }
+
+        @Override
+        public void close() {
+            for (Run run : _runs) {
+                run.close();
+            }
+        }
+
+        /** The runs merged. */
+        private final List<Run> _runs;
+        /** The runs that have a current row, ordered by it. */
+        private final PriorityQueue<Run> _heap;
+        /** The run whose row is current, which is not in _heap. */
+        private Run _current;
+        /** True once the runs have been started. */
+        private boolean _started;
+    }
+
+    /** My input. */
+    private final RowSource _input;
+    /** The order of my output. */
+    private final Order _order;
+    /** The comparison of rows with their keys by _order. */
+    private final Comparator<Keyed> _compare;
+    /** Estimated number of bytes of rows to hold in memory. */
+    private final long _memory;
+    /** True iff I drop duplicate rows. */
+    private final boolean _distinct;
+    /** Number of rows I may still produce. */
+    private long _remaining;
+    /** The merge of my runs, once my input has been read. */
+    private Run _merged;
+    /** My current row. */
+    private Keyed _row;
+}
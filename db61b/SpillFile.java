@@ -0,0 +1,142 @@
+package db61b;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static db61b.Utils.*;
+
+/** A temporary file of rows, used by operators that must set rows aside
+ *  when they do not fit in memory (see Sort and Aggregate).  Rows are
+ *  first written, then, after finish, read back once in the same
+ *  order, as a RowSource.  Each row is written as its number of values,
+ *  followed by each value as the length of its UTF-8 encoding and the
+ *  encoding.  The file is deleted when it is closed, which its user
+ *  must do, even on failure.  (It is not also registered for deletion
+ *  at exit, since a server, which never exits, would accumulate such
+ *  registrations.)
+ *  @author Yasaman Bahri
+ */
+class SpillFile implements RowSource {
+
+    /** Size of the buffers used for the file. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A new, empty temporary file, open for writing. */
+    SpillFile() {
+        try {
+            _file = File.createTempFile("db61b-spill", ".rows");
+            _out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(_file),
+                                         BUFFER_SIZE));
+        } catch (IOException e) {
+            close();
+            throw error("could not create temporary file: %s",
+                        e.getMessage());
+        }
+    }
+
+    /** Append ROW to me.  Requires that finish has not been called. */
+    void write(Row row) {
+        try {
+            _out.writeInt(row.size());
+            for (int k = 0; k < row.size(); k += 1) {
+                byte[] bytes = row.get(k).getBytes(StandardCharsets.UTF_8);
+                _out.writeInt(bytes.length);
+                _out.write(bytes);
+            }
+            _size += 1;
+        } catch (IOException e) {
+            close();
+            throw error("problem writing temporary file: %s",
+                        e.getMessage());
+        }
+    }
+
+    /** Return the number of rows written to me. */
+    long size() {
+        return _size;
+    }
+
+    /** Stop writing, and prepare to read my rows. */
+    void finish() {
+        try {
+            _out.close();
+            _out = null;
+            _in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(_file),
+                                        BUFFER_SIZE));
+        } catch (IOException e) {
+            close();
+            throw error("problem writing temporary file: %s",
+                        e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean next() {
+        try {
+            int width;
+            try {
+                width = _in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            String[] data = new String[width];
+            for (int k = 0; k < width; k += 1) {
+                byte[] bytes = new byte[_in.readInt()];
+                _in.readFully(bytes);
+                data[k] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            _row = new Row(data);
+            return true;
+        } catch (IOException e) {
+            close();
+            throw error("problem reading temporary file: %s",
+                        e.getMessage());
+        }
+    }
+
+    @Override
+    public Row row() {
+        return _row;
+    }
+
+    /** Release my streams and delete my file. */
+    @Override
+    public void close() {
+        try {
+            if (_out != null) {
+                _out.close();
+            }
+            if (_in != null) {
+                _in.close();
+            }
+        } catch (IOException e) {
+            /* Ignore: the file is being discarded. */
+        }
+        _out = null;
+        _in = null;
+        if (_file != null) {
+            _file.delete();
+        }
+    }
+
+    /** My file. */
+    private File _file;
+    /** Output to my file while it is being written. */
+    private DataOutputStream _out;
+    /** Input from my file once it is finished. */
+    private DataInputStream _in;
+    /** Number of rows written. */
+    private long _size;
+    /** The row last read. */
+    private Row _row;
+}
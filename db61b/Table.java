@@ -1,11 +1,17 @@
 package db61b;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -21,6 +27,21 @@ class Table implements Iterable<Row> {
     /** A new Table named NAME whose columns are give by COLUMNTITLES,
      *  which must be distinct (else exception thrown). */
     Table(String name, String[] columnTitles) {
+        this(name, columnTitles, TableStore.ROWS);
+    }
+
+    /** A new Table named NAME whose columns are given by COLUMNTITLES,
+     *  which must be distinct, and whose rows are kept in a store of the
+     *  kind named STORAGE (see TableStore.create). */
+    Table(String name, String[] columnTitles, String storage) {
+        this(name, columnTitles, untyped(columnTitles.length), storage);
+    }
+
+    /** A new Table named NAME whose columns are given by COLUMNTITLES,
+     *  which must be distinct, and have types TYPES, and whose rows are
+     *  kept in a store of the kind named STORAGE. */
+    Table(String name, String[] columnTitles, ColumnType[] types,
+          String storage) {
         _name = name;
         List<String> mylist = Arrays.asList(columnTitles);
         HashSet<String> uniqueColumns = new HashSet<String>();
@@ -30,6 +51,43 @@ class Table implements Iterable<Row> {
         } else {
             _titles = columnTitles;
         }
+        _types = types;
+        for (ColumnType type : types) {
+            _typed |= type.isNumeric();
+        }
+        _storage = storage;
+        _store = TableStore.create(storage, types);
+        _rowIndex = new RowIndex(_store);
+        _saved = new TableFile();
+    }
+
+    /** A new Table named NAME whose columns have titles COLUMNTITLES and
+     *  types TYPES, containing the (distinct) rows of STORE.  If STORE is
+     *  read-only, rows added later cause it to be copied to a store of
+     *  the kind named STORAGE. */
+    Table(String name, String[] columnTitles, ColumnType[] types,
+          TableStore store, String storage) {
+        this(name, columnTitles, types, storage);
+        _store = store;
+        _rowIndex = null;
+    }
+
+    /** A read-only copy of TABLE as it is now (see snapshot). */
+    private Table(Table table) {
+        _name = table._name;
+        _titles = table._titles;
+        _types = table._types;
+        _typed = table._typed;
+        _storage = table._storage;
+        _store = table._store.snapshot();
+        for (OrderedIndex index : table._indexes) {
+            _indexes.add(index.view(_store.size()));
+        }
+        for (BitmapIndex index : table._bitmaps) {
+            _bitmaps.add(index.view(_store.size()));
+        }
+        _saved = table._saved;
+        _snapshot = this;
     }
 
     /** A new Table named NAME whose column names are give by COLUMNTITLES. */
@@ -37,6 +95,28 @@ class Table implements Iterable<Row> {
         this(name, columnTitles.toArray(new String[columnTitles.size()]));
     }
 
+    /** A new Table named NAME whose column names are given by COLUMNTITLES,
+     *  stored as STORAGE. */
+    Table(String name, List<String> columnTitles, String storage) {
+        this(name, columnTitles.toArray(new String[columnTitles.size()]),
+             storage);
+    }
+
+    /** A new Table named NAME whose column names are given by COLUMNTITLES
+     *  and column types by TYPES, stored as STORAGE. */
+    Table(String name, List<String> columnTitles, List<ColumnType> types,
+          String storage) {
+        this(name, columnTitles.toArray(new String[columnTitles.size()]),
+             types.toArray(new ColumnType[types.size()]), storage);
+    }
+
+    /** Return an array of N STRING types. */
+    private static ColumnType[] untyped(int n) {
+        ColumnType[] types = new ColumnType[n];
+        Arrays.fill(types, ColumnType.STRING);
+        return types;
+    }
+
     /** Return the number of columns in this table. */
     int numColumns() {
         return _titles.length;
@@ -52,10 +132,29 @@ class Table implements Iterable<Row> {
         return new TableIterator(this);
     }
 
+    /** Returns the name of the kind of store holding my rows. */
+    String storage() {
+        return _storage;
+    }
+
     /** Returns an iterator that returns my rows in an unspecfied order. */
     @Override
     public Iterator<Row> iterator() {
-        return _rowsOf.listIterator();
+        return new Iterator<Row>() {
+            @Override
+            public boolean hasNext() {
+                return _next < size();
+            }
+
+            @Override
+            public Row next() {
+                _next += 1;
+                return _store.row(_next - 1);
+            }
+
+            /** Position of the next row to return. */
+            private int _next;
+        };
     }
 
     /** Return the title of the Kth column.  Requires 0 <= K < columns(). */
@@ -63,6 +162,11 @@ class Table implements Iterable<Row> {
         return _titles[k];
     }
 
+    /** Return the type of the Kth column.  Requires 0 <= K < columns(). */
+    ColumnType type(int k) {
+        return _types[k];
+    }
+
 
     /** Return the number of the column whose title is TITLE, or -1 if
      *  there isn't one. */
@@ -79,7 +183,179 @@ class Table implements Iterable<Row> {
 
     /** Return the number of Rows in this table. */
     int size() {
-        return _rowsOf.size();
+        return _store.size();
+    }
+
+    /** Return the value of column COL in row ROW.  Requires
+     *  0 <= ROW < size(). */
+    String value(int row, int col) {
+        return _store.get(row, col);
+    }
+
+    /** Return the vector holding column K, or null if my storage does
+     *  not keep columns separately. */
+    ColumnVector vector(int k) {
+        return _store.column(k);
+    }
+
+    /** Return the dictionary encoding column K, or null if my storage
+     *  does not dictionary-encode it. */
+    DictionaryVector dictionary(int k) {
+        ColumnVector vector = vector(k);
+        if (vector instanceof DictionaryVector) {
+            return (DictionaryVector) vector;
+        }
+        return null;
+    }
+
+    /** Return ROW with the values of my numeric columns converted to
+     *  canonical form, so that rows whose numbers are written differently
+     *  are recognized as duplicates.  Throws a DBException if a value is
+     *  not of its column's type. */
+    Row canonical(Row row) {
+        if (!_typed) {
+            return row;
+        }
+        String[] data = new String[row.size()];
+        for (int k = 0; k < data.length; k += 1) {
+            data[k] = _types[k].canonical(row.get(k));
+        }
+        return new Row(data);
+    }
+
+    /** Create an index named NAME on my column titled COLUMN, covering
+     *  the rows already present and maintained as rows are added. */
+    void createIndex(String name, String column) {
+        int k = indexedColumn(name, column);
+        changing();
+        OrderedIndex index = new OrderedIndex(name, k, _types[k]);
+        for (int i = 0; i < size(); i += 1) {
+            index.add(_store.get(i, k), i);
+        }
+        _indexes.add(index);
+    }
+
+    /** Create a bitmap index named NAME on my column titled COLUMN, as
+     *  for createIndex. */
+    void createBitmapIndex(String name, String column) {
+        int k = indexedColumn(name, column);
+        changing();
+        BitmapIndex index = new BitmapIndex(name, k, _types[k]);
+        for (int i = 0; i < size(); i += 1) {
+            index.add(_store.get(i, k), i);
+        }
+        _bitmaps.add(index);
+    }
+
+    /** Return the number of my column titled COLUMN, on which an index
+     *  named NAME is to be created, checking that the column exists and
+     *  that I have no index by that name. */
+    private int indexedColumn(String name, String column) {
+        int k = columnIndex(column);
+        if (k == -1) {
+            throw error("%s is not a column in %s", column, _name);
+        }
+        for (OrderedIndex index : _indexes) {
+            if (index.name().equals(name)) {
+                throw error("index %s already exists on %s", name, _name);
+            }
+        }
+        for (BitmapIndex index : _bitmaps) {
+            if (index.name().equals(name)) {
+                throw error("index %s already exists on %s", name, _name);
+            }
+        }
+        return k;
+    }
+
+    /** Return a bitmap index on column K, or null if there is none. */
+    BitmapIndex bitmapIndex(int k) {
+        for (BitmapIndex index : _bitmaps) {
+            if (index.column() == k) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /** Return an index on column K, or null if there is none. */
+    OrderedIndex index(int k) {
+        for (OrderedIndex index : _indexes) {
+            if (index.column() == k) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /** Return my (ordered) indices. */
+    List<OrderedIndex> indexes() {
+        return Collections.unmodifiableList(_indexes);
+    }
+
+    /** Return my bitmap indices. */
+    List<BitmapIndex> bitmapIndexes() {
+        return Collections.unmodifiableList(_bitmaps);
+    }
+
+    /** Return a read-only copy of me as I am now, which rows added to me
+     *  later do not change: the version of me that a query started now
+     *  should see.  Since I am only ever appended to, it holds my first
+     *  size() rows, and shares my storage and indices (see
+     *  TableStore.snapshot and OrderedIndex.view), so that it is cheap to
+     *  make.  Only the thread that modifies me may call this; other
+     *  threads may read the result once it has been safely published
+     *  (see Catalog). */
+    Table snapshot() {
+        if (_snapshot == null) {
+            _snapshot = new Table(this);
+        }
+        return _snapshot;
+    }
+
+    /** Prepare to change, forgetting my latest snapshot.  Throws
+     *  DBException if I am a snapshot, which may not change. */
+    private void changing() {
+        if (_snapshot == this) {
+            throw error("cannot modify a snapshot of %s", _name);
+        }
+        _snapshot = null;
+    }
+
+    /** Prepare my store and duplicate index for adding rows: if my store
+     *  is read-only (as when mapped from a file), copy my rows into a
+     *  writable one; and if I have no duplicate index, build it. */
+    private void makeWritable() {
+        changing();
+        if (_store.readOnly()) {
+            TableStore store = TableStore.create(_storage, _types);
+            store.reserve(_store.size());
+            for (int k = 0; k < _store.size(); k += 1) {
+                store.add(_store.row(k));
+            }
+            _store = store;
+            _rowIndex = null;
+        }
+        if (_rowIndex == null) {
+            _rowIndex = new RowIndex(_store);
+            for (int k = 0; k < _store.size(); k += 1) {
+                _rowIndex.insert(k, _store.hash(k));
+            }
+        }
+    }
+
+    /** Append ROW, which must not be a duplicate and whose hash is HASH,
+     *  to my store, updating my indices. */
+    private void append(Row row, int hash) {
+        _store.add(row);
+        int pos = _store.size() - 1;
+        _rowIndex.insert(pos, hash);
+        for (OrderedIndex index : _indexes) {
+            index.add(row.get(index.column()), pos);
+        }
+        for (BitmapIndex index : _bitmaps) {
+            index.add(row.get(index.column()), pos);
+        }
     }
 
     /** Add ROW to THIS if no equal row already exists.  Return true if anything
@@ -88,87 +364,255 @@ class Table implements Iterable<Row> {
         if (_titles.length != row.size()) {
             throw new DBException("Mismatching column sizes.");
         }
-        boolean isRepeat = false;
-        if (_rowsOf != null) {
-            for (int i = 0; i < _rowsOf.size(); i++) {
-                if (row.equals(_rowsOf.get(i))) {
-                    isRepeat = true;
-                }
+        row = canonical(row);
+        makeWritable();
+        int hash = row.hashCode();
+        if (_rowIndex.contains(row, hash)) {
+            return false;
+        }
+        append(row, hash);
+        return true;
+    }
+
+    /** Return the position of the row of THIS equal to ROW, or -1 if
+     *  there is none.  Unlike add, this only reads me: without a
+     *  duplicate index (as when I am a snapshot or my store is
+     *  read-only), my rows are searched in turn. */
+    int find(Row row) {
+        if (_titles.length != row.size()) {
+            return -1;
+        }
+        row = canonical(row);
+        int hash = row.hashCode();
+        if (_rowIndex != null) {
+            return _rowIndex.find(row, hash);
+        }
+        for (int k = 0; k < _store.size(); k += 1) {
+            if (_store.hash(k) == hash && _store.rowEquals(k, row)) {
+                return k;
             }
         }
-        if (!isRepeat) {
-            _rowsOf.add(row);
-            return true;
-        } else {
-            return false;
+        return -1;
+    }
+
+    /** Append all of ROWS to THIS, skipping any that are equal to a row
+     *  already present (or to an earlier member of ROWS).  Return the
+     *  number of rows actually added.  This is the bulk counterpart of
+     *  add, used when loading whole files and for multi-row inserts.
+     *  If any row has the wrong number of columns, none is added. */
+    int addAll(Collection<Row> rows) {
+        RowBatch batch = new RowBatch();
+        for (Row row : rows) {
+            if (_titles.length != row.size()) {
+                throw new DBException("Mismatching column sizes.");
+            }
+            row = canonical(row);
+            batch.add(row, row.hashCode());
+        }
+        return addCanonical(batch);
+    }
+
+    /** Append the rows of BATCH, as by addAll.  They must already be in
+     *  canonical form and have the right number of columns.  This is
+     *  addAll for rows prepared by other threads (see CsvLoader and
+     *  Planner).  My store and duplicate index are grown once for the
+     *  whole batch, and my secondary indices are brought up to date
+     *  after it has been appended (see OrderedIndex.addAll). */
+    int addCanonical(RowBatch batch) {
+        makeWritable();
+        _store.reserve(batch.size());
+        _rowIndex.reserve(batch.size());
+        int first = _store.size();
+        List<Row> added = new ArrayList<Row>();
+        for (int i = 0; i < batch.size(); i += 1) {
+            Row row = batch.row(i);
+            if (!_rowIndex.contains(row, batch.hash(i))) {
+                _store.add(row);
+                _rowIndex.insert(_store.size() - 1, batch.hash(i));
+                added.add(row);
+            }
+        }
+        for (OrderedIndex index : _indexes) {
+            index.addAll(added, first);
+        }
+        for (BitmapIndex index : _bitmaps) {
+            for (int i = 0; i < added.size(); i += 1) {
+                index.add(added.get(i).get(index.column()), first + i);
+            }
+        }
+        return added.size();
+    }
+
+    /** Append the rows of the text-format file FILE (see readTable),
+     *  skipping duplicates as for addAll, and return the number of rows
+     *  added.  The file's header must name my columns, in order; any
+     *  column types it gives are ignored in favor of mine.  The rows are
+     *  parsed in parallel and added a batch at a time (see CsvLoader), so
+     *  that if a malformed line stops the import, the batches before it
+     *  remain added. */
+    int importFile(String file) {
+        try (CsvLoader input = new CsvLoader(new File(file))) {
+            String header = input.header();
+            if (header == null) {
+                throw error("missing header in %s", file);
+            }
+            String[] columnNames = header.split(",");
+            boolean matches = columnNames.length == _titles.length;
+            for (int k = 0; matches && k < columnNames.length; k += 1) {
+                String title = columnNames[k].replaceFirst(":.*", "");
+                matches = title.equals(_titles[k]);
+            }
+            if (!matches) {
+                throw error("columns of %s do not match %s", file, _name);
+            }
+            return input.load(this);
+        } catch (NoSuchFileException e) {
+            throw error("could not find %s", file);
+        } catch (IOException e) {
+            throw error("problem reading from %s", file);
         }
     }
 
     /** Read the contents of the file NAME.db, and return as a Table.
      *  Format errors in the .db file cause a DBException. */
     static Table readTable(String name) {
-        BufferedReader input;
+        return readTable(name, TableStore.ROWS);
+    }
+
+    /** Read the contents of the file NAME.db into a Table whose rows are
+     *  stored as STORAGE, and return it.  The file may be in binary format
+     *  (see BinaryTable), in which case the table's rows are mapped from
+     *  it until it is modified, or in the text format, in which a column
+     *  title in the header of the form TITLE:TYPE declares the column to
+     *  have type TYPE (see ColumnType).  Text files are parsed in parallel
+     *  (see CsvLoader).  Format errors in the .db file cause a
+     *  DBException. */
+    static Table readTable(String name, String storage) {
+        File file = new File(name + ".db");
+        if (BinaryTable.isBinary(file)) {
+            return BinaryTable.read(name, file, storage);
+        }
         Table table;
-        input = null;
-        table = null;
-        try {
-            input = new BufferedReader(new FileReader(name + ".db"));
-            String header = input.readLine();
+        try (CsvLoader input = new CsvLoader(file)) {
+            String header = input.header();
             if (header == null) {
                 throw error("missing header in DB file");
             }
             String[] columnNames = header.split(",");
-            table = new Table(name, columnNames);
-            String s = input.readLine();
-            while (s != null) {
-                String[] rowstring = s.split(",");
-                Row dbRow = new Row(rowstring);
-                table.add(dbRow);
-                s = input.readLine();
-            }
-        } catch (FileNotFoundException e) {
+            ColumnType[] types = untyped(columnNames.length);
+            for (int k = 0; k < columnNames.length; k += 1) {
+                int colon = columnNames[k].indexOf(':');
+                if (colon >= 0) {
+                    types[k] = ColumnType.parse(
+                        columnNames[k].substring(colon + 1));
+                    columnNames[k] = columnNames[k].substring(0, colon);
+                }
+            }
+            table = new Table(name, columnNames, types, storage);
+            input.load(table);
+            if (endsLine(file)) {
+                table._saved.written(file, TableFile.TEXT, table.size(), 0);
+            }
+        } catch (NoSuchFileException e) {
             throw error("could not find %s.db", name);
         } catch (IOException e) {
             throw error("problem reading from %s.db", name);
-        } finally {
-            if (input != null) {
-                try {
-                    input.close();
+        }
+        return table;
+    }
+
+    /** Return true iff FILE ends with a newline, so that lines may be
+     *  appended to it. */
+    private static boolean endsLine(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            if (input.length() == 0) {
+                return false;
+            }
+            input.seek(input.length() - 1);
+            return input.read() == '\n';
+        }
+    }
+
+    /** Return what I know of the file I was last read from or stored
+     *  to. */
+    TableFile saved() {
+        return _saved;
+    }
+
+    /** Write the contents of TABLE into the file NAME.db in binary
+     *  format.  If I was last read from or stored to that file in
+     *  binary format, only the rows added since are appended to it as
+     *  new row groups, unless it needs compaction (see TableFile).  Any
+     *  I/O errors cause a DBException. */
+    void writeBinaryTable(String name) {
+        File file = new File(name + ".db");
+        synchronized (_saved) {
+            int size = size();
+            int from = _saved.appendable(file, TableFile.BINARY, size);
+            _saved.forget();
+            if (from >= 0) {
+                int groups = BinaryTable.append(this, file, from);
+                _saved.written(file, TableFile.BINARY, size,
+                               _saved.groups() + groups);
+            } else {
+                BinaryTable.write(this, file);
+                _saved.written(file, TableFile.BINARY, size,
+                               TableFile.groups(size));
+            }
+        }
+    }
+
+    /** Write the contents of TABLE into the file NAME.db, marking the
+     *  titles of numeric columns with their types. Any I/O errors
+     *  cause a DBException.  If I was last read from or stored to that
+     *  file in this format, only the rows added since are appended to
+     *  it.  Otherwise, the file is written under a temporary name and
+     *  renamed, so that a table mapped from NAME.db may be written back
+     *  to it. */
+    void writeTable(String name) {
+        File file = new File(name + ".db");
+        synchronized (_saved) {
+            int size = size();
+            int from = _saved.appendable(file, TableFile.TEXT, size);
+            _saved.forget();
+            if (from >= 0) {
+                try (PrintStream output =
+                     new PrintStream(new BufferedOutputStream(
+                                         new FileOutputStream(file, true)))) {
+                    writeRows(output, from, size);
+                    if (output.checkError()) {
+                        throw error("trouble writing to %s.db", name);
+                    }
                 } catch (IOException e) {
-                    /* Ignore IOException */
+                    throw error("trouble writing to %s.db", name);
                 }
+            } else {
+                rewriteTable(name, file, size);
             }
+            _saved.written(file, TableFile.TEXT, size, 0);
         }
-        return table;
     }
 
-    /** Write the contents of TABLE into the file NAME.db. Any I/O errors
-     *  cause a DBException. */
-    void writeTable(String name) {
+    /** Write my first SIZE rows, with a header, to FILE, whose name is
+     *  NAME.db, under a temporary name, and rename it. */
+    private void rewriteTable(String name, File file, int size) {
         PrintStream output;
         output = null;
+        File temp = new File(name + ".db.tmp");
         try {
-            String sep;
-            sep = "";
-            output = new PrintStream(name + ".db");
+            output = new PrintStream(temp);
             for (int i = 0; i < _titles.length; i++) {
                 output.print(_titles[i]);
+                if (_types[i].isNumeric()) {
+                    output.print(":" + _types[i].title());
+                }
                 if (i != (_titles.length - 1)) {
                     output.print(",");
                 } else {
                     output.println();
                 }
             }
-            for (int j = 0; j < _rowsOf.size(); j++) {
-                Row currRow = _rowsOf.get(j);
-                for (int k = 0; k < currRow.size(); k++) {
-                    output.print(currRow.get(k));
-                    if (k != (currRow.size() - 1)) {
-                        output.print(",");
-                    }
-                }
-                output.println();
-            }
+            writeRows(output, 0, size);
         } catch (IOException e) {
             throw error("trouble writing to %s.db", name);
         } finally {
@@ -176,28 +620,60 @@ class Table implements Iterable<Row> {
                 output.close();
             }
         }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw error("trouble writing to %s.db", name);
+        }
+    }
+
+    /** Write my rows FROM to TO - 1 to OUTPUT in the text format, one
+     *  per line. */
+    private void writeRows(PrintStream output, int from, int to) {
+        for (int j = from; j < to; j++) {
+            for (int k = 0; k < _titles.length; k++) {
+                output.print(_store.get(j, k));
+                if (k != (_titles.length - 1)) {
+                    output.print(",");
+                }
+            }
+            output.println();
+        }
+    }
+
+    /** Print ROW on OUT as print prints each of my rows. */
+    static void print(Row row, PrintStream out) {
+        out.print("  ");
+        for (int k = 0; k < row.size(); k++) {
+            out.print(row.get(k));
+            if (k != (row.size() - 1)) {
+                out.print(" ");
+            }
+        }
+        out.println();
     }
 
-    /** Print my contents on the standard output, separated by spaces
-     *  and indented by two spaces. */
-    void print() {
-        for (int j = 0; j < _rowsOf.size(); j++) {
-            System.out.print("  ");
-            Row currRow = _rowsOf.get(j);
-            for (int k = 0; k < currRow.size(); k++) {
-                System.out.print(currRow.get(k));
-                if (k != (currRow.size() - 1)) {
-                    System.out.print(" ");
+    /** Print my contents on OUT, separated by spaces and indented by two
+     *  spaces. */
+    void print(PrintStream out) {
+        for (int j = 0; j < size(); j++) {
+            out.print("  ");
+            for (int k = 0; k < _titles.length; k++) {
+                out.print(_store.get(j, k));
+                if (k != (_titles.length - 1)) {
+                    out.print(" ");
                 }
             }
-            System.out.println();
+            out.println();
         }
     }
 
     /** Return row K of the table. Used by TableIterator. */
     Row getRow(int k) {
-        if ((_rowsOf != null) & (k < _rowsOf.size())) {
-            return _rowsOf.get(k);
+        if (k < size()) {
+            return _store.row(k);
         } else {
             return null;
         }
@@ -207,7 +683,26 @@ class Table implements Iterable<Row> {
     private final String _name;
     /** My column titles. */
     private String[] _titles;
-    /** List of pointers to rows. */
-    private List<Row> _rowsOf = new ArrayList<Row>();
+    /** My column types. */
+    private final ColumnType[] _types;
+    /** True iff any of my columns is numeric. */
+    private boolean _typed;
+    /** Name of the kind of store holding my rows. */
+    private final String _storage;
+    /** My rows. */
+    private TableStore _store;
+    /** The rows of _store, hashed for duplicate detection, or null if
+     *  not yet built. */
+    private RowIndex _rowIndex;
+    /** Secondary indices on my columns. */
+    private final List<OrderedIndex> _indexes = new ArrayList<>();
+    /** Bitmap indices on my columns. */
+    private final List<BitmapIndex> _bitmaps = new ArrayList<>();
+    /** My latest snapshot, or null if I have changed since it was made.
+     *  A snapshot is its own snapshot. */
+    private Table _snapshot;
+    /** The file I was last read from or stored to, shared with my
+     *  snapshots. */
+    private final TableFile _saved;
 }
 
@@ -0,0 +1,90 @@
+package db61b;
+
+import java.io.File;
+
+/** What a table knows of the .db file it was last read from or stored
+ *  to: which file, in which format, how many of the table's rows it
+ *  holds, and (for the binary format) in how many row groups.  Since
+ *  tables are only ever appended to, a table stored again to the same
+ *  file need only append the rows added since, provided the file has
+ *  not been changed meanwhile (which is checked by its length and time
+ *  of modification).  A table shares its TableFile with its snapshots,
+ *  which store it; they synchronize on it while doing so.
+ *
+ *  In the binary format, each such append adds row groups, so a table
+ *  stored often in small increments fragments into many small groups,
+ *  each of which costs a separate mapping to read.  Once a file has
+ *  MAX_EXTRA_GROUPS more groups than a freshly written one would, the
+ *  next store compacts it by rewriting it whole.
+ *  @author Yasaman Bahri
+ */
+class TableFile {
+
+    /** Names of file formats. */
+    static final String TEXT = "text", BINARY = "binary";
+
+    /** Number of row groups a binary file may have beyond the fewest
+     *  that could hold its rows before it is compacted. */
+    static final int MAX_EXTRA_GROUPS = 16;
+
+    /** Return the number of rows that FILE holds of a table of SIZE rows
+     *  to be stored to it in FORMAT, if the rows after them may simply be
+     *  appended to it.  Otherwise, return -1: the file must be rewritten
+     *  (as when the table was last stored elsewhere, or in another
+     *  format, or the file has changed since, or holds more rows than
+     *  SIZE, or needs compaction). */
+    int appendable(File file, String format, int size) {
+        if (_file == null || !_file.equals(file.getAbsoluteFile())
+            || !_format.equals(format) || _rows > size
+            || _length != file.length()
+            || _modified != file.lastModified()) {
+            return -1;
+        }
+        if (format.equals(BINARY)
+            && _groups + groups(size - _rows)
+               > groups(size) + MAX_EXTRA_GROUPS) {
+            return -1;
+        }
+        return _rows;
+    }
+
+    /** Record that FILE, in FORMAT, now holds the first ROWS rows of the
+     *  table, in GROUPS row groups if FORMAT is binary. */
+    void written(File file, String format, int rows, int groups) {
+        _file = file.getAbsoluteFile();
+        _format = format;
+        _rows = rows;
+        _groups = groups;
+        _length = file.length();
+        _modified = file.lastModified();
+    }
+
+    /** Return the number of row groups in my file, if binary. */
+    int groups() {
+        return _groups;
+    }
+
+    /** Forget my file, so that the table is next stored in full. */
+    void forget() {
+        _file = null;
+    }
+
+    /** Return the number of row groups in which a binary file holds ROWS
+     *  rows. */
+    static int groups(int rows) {
+        return (rows + BinaryTable.GROUP_SIZE - 1) / BinaryTable.GROUP_SIZE;
+    }
+
+    /** The file, or null if unknown. */
+    private File _file;
+    /** The format of _file. */
+    private String _format;
+    /** The number of the table's rows _file holds. */
+    private int _rows;
+    /** The number of row groups in _file, if binary. */
+    private int _groups;
+    /** The length of _file when last read or written. */
+    private long _length;
+    /** The modification time of _file when last read or written. */
+    private long _modified;
+}
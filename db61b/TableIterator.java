@@ -16,8 +16,7 @@ class TableIterator {
 
     /** Reinitialize me to the first row. */
     void reset() {
-        _row = _table.getRow(0);
-        rowIndex = 0;
+        _pos = 0;
     }
 
     /** Return the Table over which I am iterating. */
@@ -28,16 +27,32 @@ class TableIterator {
     /** Return true iff there is a current Row (that is, we have not
      *  exhausted the iterator). */
     boolean hasRow() {
-        return _row != null;
+        return _pos < _table.size();
     }
 
     /** Proceed to the next row.  Assumes that hasRow() is true.  Return
-     *  the new value of hasRow(). */
+     *  the row that was current. */
     Row next() {
-        Row oldRow = _row;
-        rowIndex++;
-        _row = _table.getRow(rowIndex);
-        return oldRow;
+        _pos += 1;
+        return _table.getRow(_pos - 1);
+    }
+
+    /** Proceed to the next row without returning the current one, which
+     *  avoids building a Row for stores that do not keep them.  Assumes
+     *  that hasRow() is true. */
+    void advance() {
+        _pos += 1;
+    }
+
+    /** Make the row at position POS of my Table current.  Requires
+     *  0 <= POS <= table().size(). */
+    void seek(int pos) {
+        _pos = pos;
+    }
+
+    /** Return the position of the current row within my Table. */
+    int position() {
+        return _pos;
     }
 
     /** Return the index of column NAME in my Table, or -1 if there is no
@@ -51,15 +66,13 @@ class TableIterator {
         if (!hasRow()) {
             throw new IllegalStateException("Past the last row.");
         }
-        return _row.get(k);
+        return _table.value(_pos, k);
     }
 
     /** My table. */
     private final Table _table;
-    /** The current Row of my Table, or null if there are no more. */
-    private Row _row;
-    /** Keeps the index of the current Row
-    (which would be returned by next()). */
-    private int rowIndex;
+    /** Position in my Table of the current row (which would be returned
+     *  by next()).  Equal to the table's size when there are no more. */
+    private int _pos;
 
 }
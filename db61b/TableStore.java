@@ -0,0 +1,85 @@
+package db61b;
+
+import static db61b.Utils.*;
+
+/** The storage that holds the rows of a Table.  Rows are addressed by
+ *  their position (0 to size() - 1) in order of insertion; a store never
+ *  removes or reorders rows.  Duplicate elimination is the Table's job,
+ *  so a store appends whatever it is given.
+ *  @author Yasaman Bahri
+ */
+interface TableStore {
+
+    /** Return the number of rows stored. */
+    int size();
+
+    /** Return the value of column COL in row ROW.  Requires
+     *  0 <= ROW < size(). */
+    String get(int row, int col);
+
+    /** Return row K as a Row.  Requires 0 <= K < size(). */
+    Row row(int k);
+
+    /** Append ROW, whose size must be my number of columns. */
+    void add(Row row);
+
+    /** Make room for at least N more rows without reallocating. */
+    void reserve(int n);
+
+    /** Return a hash of row K.  This must agree with row(K).hashCode(),
+     *  so that a stored row and an equal Row hash alike. */
+    int hash(int k);
+
+    /** Return true iff row K has the same values as ROW. */
+    boolean rowEquals(int k, Row row);
+
+    /** Return true iff add may not be called on me.  A Table must then
+     *  copy my rows into a writable store before adding to them. */
+    default boolean readOnly() {
+        return false;
+    }
+
+    /** Return a read-only store holding my current rows, which rows
+     *  added to me later do not change.  It shares my storage, since
+     *  adding rows writes only past the end of the rows already stored
+     *  and growing my storage copies it, so it is cheap to make.  It may
+     *  be read by other threads while rows are added to me, once it has
+     *  been safely published (see Catalog). */
+    TableStore snapshot();
+
+    /** Return the vector holding column K, or null if I do not keep
+     *  columns separately. */
+    default ColumnVector column(int k) {
+        return null;
+    }
+
+    /** Name of the default, row-at-a-time storage mode. */
+    String ROWS = "rows";
+    /** Name of the dictionary-encoded, column-at-a-time storage mode. */
+    String COLUMNAR = "columnar";
+    /** Name of the storage mode that keeps rows outside the heap. */
+    String OFFHEAP = "offheap";
+
+    /** Return a new, empty store of the kind named MODE holding columns
+     *  of types TYPES.  Since only a ColumnStore keeps numbers as
+     *  primitives, a table with numeric columns is stored as COLUMNAR
+     *  even if MODE is ROWS.  OFFHEAP keeps rows of every type outside
+     *  the heap (see OffHeapStore). */
+    static TableStore create(String mode, ColumnType[] types) {
+        switch (mode) {
+        case ROWS:
+            for (ColumnType type : types) {
+                if (type.isNumeric()) {
+                    return new ColumnStore(types);
+                }
+            }
+            return new RowStore();
+        case COLUMNAR:
+            return new ColumnStore(types);
+        case OFFHEAP:
+            return new OffHeapStore(types.length);
+        default:
+            throw error("unknown storage mode: %s", mode);
+        }
+    }
+}
@@ -2,8 +2,27 @@ package db61b;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /** Testing the Row Class
  *  @author Yasaman Bahri
@@ -51,6 +70,977 @@ public class UnitTests {
         groupIter.reset();
         assertEquals(groupIter.next(), row1);
     }
+
+    /** Tests bulk appends, which must still reject duplicate rows. */
+    @Test
+    public void testAddAll() {
+        Table t = new Table("T", new String[] {"A", "B"});
+        t.add(new Row(new String[] {"1", "2"}));
+        List<Row> rows = new ArrayList<Row>();
+        rows.add(new Row(new String[] {"1", "2"}));
+        rows.add(new Row(new String[] {"3", "4"}));
+        rows.add(new Row(new String[] {"3", "4"}));
+        assertEquals(1, t.addAll(rows));
+        assertEquals(2, t.size());
+        assertEquals(false, t.add(new Row(new String[] {"3", "4"})));
+    }
+
+    /** Tests multi-row inserts and importing a file into an indexed
+     *  table. */
+    @Test
+    public void testInsertAndImport() throws IOException {
+        File file = File.createTempFile("db61b", ".csv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "A,B:int\nx,01\ny,2\nz,3\n"
+                    .getBytes(StandardCharsets.UTF_8));
+        Map<String, Table> db = new HashMap<String, Table>();
+        CommandInterpreter interpreter = new CommandInterpreter(
+            db, new StringReader("create table T (A, B int);"
+                                 + "insert into T values ('x', '1'),"
+                                 + " ('w', '4'), ('x', '01');"
+                                 + "create index ib on T (B);"
+                                 + "import T from '" + file.getPath()
+                                 + "';"), null);
+        while (interpreter.statement()) {
+            continue;
+        }
+        Table t = db.get("T");
+        assertEquals(4, t.size());
+        assertEquals("z", t.value(3, 0));
+        assertEquals(Arrays.asList(2, 3, 1),
+                     list(t.index(1).lookup(">=", t.index(1).key("2"))));
+    }
+
+    /** Tests that snapshots of a table, and their indices, are not
+     *  changed by rows added later, even while they are being read. */
+    @Test
+    public void testSnapshot() throws InterruptedException {
+        Table t = new Table("T", new String[] {"A", "B"},
+                            new ColumnType[] {ColumnType.INT,
+                                              ColumnType.STRING},
+                            "columnar");
+        t.createIndex("ia", "A");
+        t.createBitmapIndex("ib", "B");
+        t.add(new Row(new String[] {"1", "x"}));
+        Table old = t.snapshot();
+        assertEquals(old, t.snapshot());
+        t.add(new Row(new String[] {"2", "x"}));
+        assertEquals(1, old.size());
+        assertEquals(2, t.snapshot().size());
+        assertEquals(1, old.index(0).lookup(">=", 0.0).size());
+        assertEquals(1, old.bitmapIndex(1).lookup("=", "x").cardinality());
+        assertEquals(0, old.find(new Row(new String[] {"01", "x"})));
+        assertEquals(-1, old.find(new Row(new String[] {"2", "x"})));
+        assertEquals(1, t.find(new Row(new String[] {"2", "x"})));
+        Map<String, Table> db = new HashMap<String, Table>();
+        db.put("T", t);
+        Catalog catalog = new Catalog(db);
+        Thread writer = new Thread(() -> {
+            for (int i = 3; i < 20000; i += 1) {
+                t.add(new Row(new String[] {Integer.toString(i),
+                                            "y" + i % 7}));
+                catalog.commit();
+            }
+        });
+        writer.start();
+        int checked = 0;
+        while (writer.isAlive() || checked == 0) {
+            Table version = catalog.snapshot().get("T");
+            int n = 0;
+            for (Row row : version) {
+                n += row.get(1).startsWith("y") ? 1 : 0;
+            }
+            assertEquals(version.size() - 2, n);
+            assertEquals(n, version.index(0).lookup(">=", 3.0).size());
+            checked += 1;
+        }
+        writer.join();
+    }
+
+    /** Tests that a logged catalog is recovered from its log, from a
+     *  checkpoint, and from a log with a torn record at its end. */
+    @Test
+    public void testWriteAheadLog() throws Exception {
+        File log = File.createTempFile("db61b", ".log");
+        File checkpoint = new File(log.getPath() + ".checkpoint");
+        log.deleteOnExit();
+        checkpoint.deleteOnExit();
+        Catalog catalog = new Catalog(log.getPath(), 1 << 16);
+        CommandInterpreter creator =
+            new CommandInterpreter(catalog,
+                                   new StringReader("create table T (A, B int);"
+                                                    + "create index ib on T"
+                                                    + " (B) using bitmap;"),
+                                   null, System.out);
+        while (creator.statement()) {
+            continue;
+        }
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int w = 0; w < 4; w += 1) {
+            StringBuilder script = new StringBuilder();
+            for (int i = 0; i < 1000; i += 1) {
+                script.append(String.format("insert into T values"
+                                            + " ('w%d', '%d');", w, i));
+            }
+            CommandInterpreter interpreter =
+                new CommandInterpreter(catalog,
+                                       new StringReader(script.toString()),
+                                       null, System.out);
+            writers.add(new Thread(() -> {
+                while (interpreter.statement()) {
+                    continue;
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(true, checkpoint.exists());
+        assertEquals(true, log.length() < 1 << 16);
+        Files.write(log.toPath(), new byte[] {0, 0, 1, 0, 7},
+                    StandardOpenOption.APPEND);
+        Table t = new Catalog(log.getPath()).snapshot().get("T");
+        assertEquals(4000, t.size());
+        assertEquals(4, t.bitmapIndex(1).lookup("=", "7").cardinality());
+    }
+
+    /** Tests that the sessions of a Server share its tables. */
+    @Test
+    public void testServer() throws IOException {
+        Server server = new Server(0, new Catalog());
+        Thread serving = new Thread(server::serve);
+        serving.start();
+        try {
+            session(server, "create table T (A, B);"
+                    + "insert into T values ('a', 'b'), ('c', 'd');");
+            String output = session(server, "select B from T where A = 'c';"
+                                    + " selec; print T;");
+            assertEquals(true, output.contains("Search results:\n  d\n"));
+            assertEquals(true, output.contains("Error: unrecognizable"));
+            assertEquals(true, output.contains("  a b\n  c d\n"));
+        } finally {
+            server.close();
+        }
+    }
+
+    /** Run a session with SERVER that sends SCRIPT, and return its
+     *  output. */
+    private static String session(Server server, String script)
+        throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        server.port())) {
+            socket.getOutputStream().write(
+                script.getBytes(StandardCharsets.UTF_8));
+            socket.shutdownOutput();
+            return new String(socket.getInputStream().readAllBytes(),
+                              StandardCharsets.UTF_8).replace("\r", "");
+        }
+    }
+
+    /** Tests equality joins, with duplicate keys on both sides, with the
+     *  condition written either way round, and with an empty table. */
+    @Test
+    public void testHashJoin() {
+        String tables = "create table T (A, B); create table U (A, C);"
+            + "create table E (A, C);"
+            + inserts("T", "1 b1", "1 b2", "2 b3", "3 b4")
+            + inserts("U", "1 c1", "1 c2", "2 c3", "4 c4");
+        assertEquals("b1 c1, b1 c2, b2 c1, b2 c2, b3 c3",
+                     selected(tables, "select B, C from T, U"
+                              + " where T.A = U.A"));
+        assertEquals("b1 c1, b1 c2, b2 c1, b2 c2, b3 c3",
+                     selected(tables, "select B, C from T, U"
+                              + " where U.A = T.A"));
+        assertEquals("", selected(tables, "select B, E.C from T, E"
+                                  + " where T.A = E.A"));
+    }
+
+    /** Run the create statements and inserts TABLES against a new
+     *  database, followed by a create statement that stores the result
+     *  of SELECT in a table R, and return the rows of R, in sorted order,
+     *  separated by commas, their values separated by spaces. */
+    private static String selected(String tables, String select) {
+        Map<String, Table> db = new HashMap<String, Table>();
+        String script = tables + "create table R as " + select + ";";
+        CommandInterpreter interpreter =
+            new CommandInterpreter(db, new StringReader(script), null);
+        while (interpreter.statement()) {
+            continue;
+        }
+        List<String> rows = new ArrayList<String>();
+        for (Row row : db.get("R")) {
+            StringBuilder values = new StringBuilder(row.get(0));
+            for (int k = 1; k < row.size(); k += 1) {
+                values.append(' ').append(row.get(k));
+            }
+            rows.add(values.toString());
+        }
+        rows.sort(null);
+        return String.join(", ", rows);
+    }
+
+    /** Return insert statements adding ROWS, each of whose values are
+     *  separated by spaces, to the table NAME. */
+    private static String inserts(String name, String... rows) {
+        StringBuilder result = new StringBuilder();
+        for (String row : rows) {
+            result.append("insert into ").append(name).append(" values '")
+                .append(row.replace(" ", "', '")).append("';");
+        }
+        return result.toString();
+    }
+
+    /** Tests inequality joins on < and <=, written either way round,
+     *  with duplicate keys, on strings, and with an empty table. */
+    @Test
+    public void testBandJoin() {
+        String tables = "create table T (A, B); create table U (A, C);"
+            + "create table V (A, C); create table W (A, D);"
+            + "create table E (A, C);"
+            + inserts("T", "1 b1", "2 b2", "2 b3", "3 b4")
+            + inserts("U", "2 c1", "3 c2", "3 c3")
+            + inserts("V", "10 c1", "9 c2")
+            + inserts("W", "2 d1", "90 d2");
+        String less = "b1 c1, b1 c2, b1 c3, b2 c2, b2 c3, b3 c2, b3 c3",
+            atMost = "b1 c1, b1 c2, b1 c3, b2 c1, b2 c2, b2 c3, b3 c1,"
+            + " b3 c2, b3 c3, b4 c2, b4 c3";
+        String select = "select B, U.C from T, U where ";
+        assertEquals(less, selected(tables, select + "T.A < U.A"));
+        assertEquals(less, selected(tables, select + "U.A > T.A"));
+        assertEquals(atMost, selected(tables, select + "T.A <= U.A"));
+        assertEquals(atMost, selected(tables, select + "U.A >= T.A"));
+        assertEquals("c2 d1", selected(tables, "select V.C, D from V, W"
+                                       + " where W.A < V.A"));
+        assertEquals("", selected(tables, "select B, E.C from T, E"
+                                  + " where T.A < E.A"));
+    }
+
+    /** Tests three-table joins, whatever the order in which the tables
+     *  are listed, nested loop joins, and a three-table join with an
+     *  empty table. */
+    @Test
+    public void testJoinOrder() {
+        String tables = "create table R (A, X); create table V (B, Y);"
+            + "create table S (A, B); create table E (B, Y);"
+            + inserts("R", "1 r1", "2 r2", "3 r3")
+            + inserts("V", "2 v1", "3 v2")
+            + inserts("S", "1 1", "1 3", "2 2", "2 4");
+        String chain = " where R.A = S.A and S.B < V.B";
+        assertEquals("r1 1 v1, r1 1 v2, r2 2 v2",
+                     selected(tables, "select X, S.B, V.Y from R, V, S"
+                              + chain));
+        assertEquals("r1 1 v1, r1 1 v2, r2 2 v2",
+                     selected(tables, "select X, S.B, V.Y from S, R, V"
+                              + chain));
+        assertEquals("r1 v1, r1 v2, r2 v2, r3 v1",
+                     selected(tables, "select X, V.Y from R, V"
+                              + " where R.A != V.B"));
+        assertEquals("r1 v1, r1 v2, r2 v1, r2 v2, r3 v1, r3 v2",
+                     selected(tables, "select X, V.Y from R, V"));
+        assertEquals("", selected(tables, "select X, S.B, E.Y from R, E, S"
+                                  + " where R.A = S.A and S.B < E.B"));
+    }
+
+    /** Tests joins with conditions that mention a single table, including
+     *  ones that no row of their table satisfies. */
+    @Test
+    public void testPushdown() {
+        String tables = "create table T (A, B); create table U (A, C);"
+            + "create table V (B, Y);"
+            + inserts("T", "1 b1", "1 b2", "2 b3", "3 b4")
+            + inserts("U", "1 c1", "1 c2", "2 c3", "4 c4")
+            + inserts("V", "b1 v1", "b3 v2", "b4 v3");
+        assertEquals("b2 c2, b3 c3",
+                     selected(tables, "select T.B, C from T, U"
+                              + " where T.A = U.A and T.B != 'b1'"
+                              + " and C > 'c1'"));
+        assertEquals("b3 c3 v2",
+                     selected(tables, "select T.B, C, Y from T, U, V"
+                              + " where T.A = U.A and T.B = V.B"
+                              + " and Y != 'v1'"));
+        assertEquals("", selected(tables, "select T.B, C from T, U"
+                                  + " where T.A = U.A and C = 'zz'"));
+    }
+
+    /** Tests each relation of compiled conditions comparing a column with
+     *  a literal, with a literal absent from the column, and with another
+     *  column, for both row and dictionary-encoded tables. */
+    @Test
+    public void testConditions() {
+        String[] relations = {"=", "!=", "<", "<=", ">", ">="};
+        String[] withY = {"ft", "tf", "tf", "tt", "ff", "ft"},
+            withZ = {"ff", "tt", "tt", "tt", "ff", "ff"};
+        for (String storage : new String[] {"rows", "columnar"}) {
+            Table t = new Table("T", new String[] {"A", "B"}, storage);
+            t.add(new Row(new String[] {"x", "y"}));
+            t.add(new Row(new String[] {"y", "y"}));
+            TableIterator iter = t.tableIterator();
+            List<TableIterator> iters = new ArrayList<TableIterator>();
+            iters.add(iter);
+            Column a = new Column(t, "A"), b = new Column(t, "B");
+            a.resolve(iters);
+            b.resolve(iters);
+            for (int i = 0; i < relations.length; i += 1) {
+                assertEquals(withY[i],
+                             truth(new Condition(a, relations[i], "y"),
+                                   iter));
+                assertEquals(withY[i],
+                             truth(new Condition(a, relations[i], b), iter));
+                assertEquals(withZ[i],
+                             truth(new Condition(a, relations[i], "z"),
+                                   iter));
+            }
+        }
+        assertEquals(true,
+                     new Condition(new Literal("a"), "<", "b").test());
+        assertEquals(false,
+                     new Condition(new Literal("a"), "=", "b").test());
+    }
+
+    /** Return, for each row of the table ITER iterates over in turn, "t"
+     *  if COND holds there and "f" if not. */
+    private static String truth(Condition cond, TableIterator iter) {
+        StringBuilder result = new StringBuilder();
+        for (iter.reset(); iter.hasRow(); iter.advance()) {
+            result.append(cond.test() ? 't' : 'f');
+        }
+        return result.toString();
+    }
+
+    /** Tests writing int, double and string columns in binary format,
+     *  in several row groups, and reading them back, and that a
+     *  truncated file is rejected. */
+    @Test
+    public void testBinaryTable() throws IOException {
+        File file = File.createTempFile("db61b", ".db");
+        file.deleteOnExit();
+        String path = file.getPath();
+        String name = path.substring(0, path.length() - 3);
+        Table t = table("T", "I int, D double, S", "-2147483648 1.5 caf\u00e9",
+                        "0 -0.25 x", "42 1e300 \u65e5\u672c",
+                        "7 0 x", "2147483647 -1e-300 caf\u00e9");
+        BinaryTable.write(t, file, 2);
+        Table u = Table.readTable(name);
+        assertEquals(t.size(), u.size());
+        for (int k = 0; k < t.numColumns(); k += 1) {
+            assertEquals(t.title(k), u.title(k));
+            assertEquals(t.type(k), u.type(k));
+            for (int r = 0; r < t.size(); r += 1) {
+                assertEquals(t.value(r, k), u.value(r, k));
+            }
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        for (int length : new int[] {bytes.length - 1, bytes.length - 4,
+                                     BinaryTable.MAGIC.length + 2}) {
+            Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+            try {
+                Table.readTable(name);
+                fail("read a binary file truncated to " + length);
+            } catch (DBException e) {
+                /* Expected */
+            }
+        }
+        BinaryTable.write(table("E", "I int, D double, S"), file);
+        Table e = Table.readTable(name);
+        assertEquals(0, e.size());
+        assertEquals(ColumnType.DOUBLE, e.type(1));
+        assertEquals("S", e.title(2));
+    }
+
+    /** Return a table named NAME with the columns COLUMNS, as in a
+     *  create statement ("A int, B"), and the rows ROWS, each of whose
+     *  values are separated by spaces. */
+    private static Table table(String name, String columns, String... rows) {
+        List<String> titles = new ArrayList<String>();
+        List<ColumnType> types = new ArrayList<ColumnType>();
+        for (String column : columns.split(", ")) {
+            String[] words = column.split(" ");
+            titles.add(words[0]);
+            types.add(words.length > 1 ? ColumnType.parse(words[1])
+                      : ColumnType.STRING);
+        }
+        Table table = new Table(name, titles, types, TableStore.ROWS);
+        for (String row : rows) {
+            table.add(new Row(row.split(" ")));
+        }
+        return table;
+    }
+
+    /** Tests a dictionary-encoded table. */
+    @Test
+    public void testColumnar() {
+        Table t = new Table("T", new String[] {"A", "B"}, "columnar");
+        assertEquals(true, t.add(new Row(new String[] {"1", "x"})));
+        assertEquals(true, t.add(new Row(new String[] {"2", "x"})));
+        assertEquals(false, t.add(new Row(new String[] {"2", "x"})));
+        assertEquals(2, t.size());
+        assertEquals("2", t.value(1, 0));
+        DictionaryVector dict = t.dictionary(1);
+        assertEquals(1, dict.distinct());
+        assertEquals(dict.code(0), dict.code(1));
+        assertEquals(-1, dict.codeOf("y"));
+        assertEquals(new Row(new String[] {"1", "x"}), t.getRow(0));
+    }
+
+    /** Tests a table stored off the heap, across several slabs. */
+    @Test
+    public void testOffHeap() {
+        Table t = new Table("T", new String[] {"A", "B"},
+                            new ColumnType[] {ColumnType.STRING,
+                                              ColumnType.INT},
+                            TableStore.OFFHEAP);
+        char[] big = new char[OffHeapStore.SLAB_SIZE];
+        Arrays.fill(big, 'b');
+        assertEquals(true, t.add(new Row(new String[] {"caf\u00e9", "1"})));
+        assertEquals(false, t.add(new Row(new String[] {"caf\u00e9", "01"})));
+        assertEquals(true, t.add(new Row(new String[] {"cafe", "1"})));
+        assertEquals(true, t.add(new Row(new String[] {new String(big),
+                                                       "2"})));
+        Table old = t.snapshot();
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < 100000; i += 1) {
+            rows.add(new Row(new String[] {"v" + i, Integer.toString(i)}));
+        }
+        assertEquals(100000, t.addAll(rows));
+        assertEquals(3, old.size());
+        assertEquals(100003, t.size());
+        assertEquals("caf\u00e9", t.value(0, 0));
+        assertEquals(OffHeapStore.SLAB_SIZE, t.value(2, 0).length());
+        assertEquals(new Row(new String[] {"v99999", "99999"}),
+                     t.getRow(100002));
+        assertEquals(0, t.addAll(rows));
+        TableIterator it = t.tableIterator();
+        it.seek(3);
+        Column b = new Column(t, "B");
+        b.resolve(Arrays.asList(it));
+        assertEquals(0.0, b.number(), 0.0);
+    }
+
+    /** Tests index maintenance and range lookups. */
+    @Test
+    public void testIndex() {
+        Table t = new Table("T", new String[] {"A", "B"});
+        t.add(new Row(new String[] {"b", "1"}));
+        t.createIndex("ia", "A");
+        t.add(new Row(new String[] {"a", "2"}));
+        t.add(new Row(new String[] {"c", "3"}));
+        t.add(new Row(new String[] {"b", "4"}));
+        OrderedIndex index = t.index(0);
+        assertEquals(null, t.index(1));
+        assertEquals(2, index.lookup("=", "b").size());
+        assertEquals(1, index.lookup("<", "b").size());
+        assertEquals(3, index.lookup(">=", "b").size());
+        assertEquals(0, index.lookup("b", false, "b", true).size());
+    }
+
+    /** Tests an indexed lookup with the literal on the left against an
+     *  empty table, which has no current row to read. */
+    @Test
+    public void testLiteralOnLeft() {
+        String output = run("create table t (a, b);"
+                            + "create index i on t (a);"
+                            + "select a from t where 'x' = a;"
+                            + "insert into t values 'x', 'y';"
+                            + "select b from t where 'w' < a;");
+        assertEquals("Search results:\nSearch results:\n  y\n", output);
+    }
+
+    /** Tests a bitmap-indexed lookup with the literal on the left against
+     *  an empty table. */
+    @Test
+    public void testBitmapLiteralOnLeft() {
+        String output = run("create table t (a, b);"
+                            + "create index i on t (a) using bitmap;"
+                            + "select a from t where 'x' = a;"
+                            + "insert into t values 'x', 'y';"
+                            + "insert into t values 'v', 'z';"
+                            + "select b from t where 'w' < a;");
+        assertEquals("Search results:\nSearch results:\n  y\n", output);
+    }
+
+    /** Tests that numeric equalities select the same rows with and
+     *  without a bitmap index on the compared column. */
+    @Test
+    public void testBitmapNumericEquality() {
+        String queries = "select a from t where b = '7.0';"
+            + "select a from t where b = '7.5';"
+            + "select a from t where b != '7.5';"
+            + "select a from t where c = '0';"
+            + "select a from t where b = '1e10';";
+        String data = "create table t (a, b int, c double);"
+            + "insert into t values ('x', '7', '-0'), ('y', '8', '1');";
+        String plain = run(data + queries);
+        assertEquals("Search results:\n  x\nSearch results:\n"
+                     + "Search results:\n  x\n  y\nSearch results:\n"
+                     + "  x\nSearch results:\n", plain);
+        assertEquals(plain, run(data + "create index ib on t (b) using bitmap;"
+                                + "create index ic on t (c) using bitmap;"
+                                + queries));
+    }
+
+    /** Run SCRIPT as Main would, against a new, empty database, and
+     *  return its output, with errors reported as Main reports them. */
+    private static String run(String script) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true,
+                                          StandardCharsets.UTF_8);
+        CommandInterpreter interpreter =
+            new CommandInterpreter(new Catalog(), new StringReader(script),
+                                   null, out);
+        while (true) {
+            try {
+                if (!interpreter.statement()) {
+                    break;
+                }
+            } catch (DBException e) {
+                out.printf("Error: %s%n", e.getMessage());
+                interpreter.skipCommand();
+            }
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Tests numeric columns. */
+    @Test
+    public void testTyped() {
+        Table t = new Table("T", new String[] {"A", "B"},
+                            new ColumnType[] {ColumnType.INT,
+                                              ColumnType.STRING}, "rows");
+        assertEquals(true, t.add(new Row(new String[] {"10", "x"})));
+        assertEquals(false, t.add(new Row(new String[] {"010", "x"})));
+        assertEquals(true, t.add(new Row(new String[] {"9", "x"})));
+        t.createIndex("ia", "A");
+        assertEquals(1, t.index(0).lookup("<", t.index(0).key("10")).size());
+        TableIterator iter = t.tableIterator();
+        List<TableIterator> iters = new ArrayList<TableIterator>();
+        iters.add(iter);
+        Column a = new Column(t, "A");
+        a.resolve(iters);
+        Condition cond = new Condition(a, "<", "10");
+        assertEquals(false, cond.test());
+        iter.advance();
+        assertEquals(true, cond.test());
+    }
+
+    /** Tests reading a text .db file. */
+    @Test
+    public void testReadTable() throws IOException {
+        File file = File.createTempFile("db61b", ".db");
+        file.deleteOnExit();
+        Files.write(file.toPath(),
+                    "A:int,B,C\r\n1,x,a\r\n01,x,a\n2,,y\n3,z,w"
+                    .getBytes(StandardCharsets.UTF_8));
+        String path = file.getPath();
+        Table t = Table.readTable(path.substring(0, path.length() - 3));
+        assertEquals(3, t.size());
+        assertEquals(ColumnType.INT, t.type(0));
+        assertEquals("", t.value(1, 1));
+        assertEquals("w", t.value(2, 2));
+    }
+
+    /** Tests that storing a table again appends only the rows added
+     *  since, and that binary files are compacted once fragmented. */
+    @Test
+    public void testStoreAppends() throws IOException {
+        File file = File.createTempFile("db61b", ".db");
+        file.deleteOnExit();
+        String path = file.getPath();
+        String name = path.substring(0, path.length() - 3);
+        Files.write(file.toPath(), "A,B:int\nx,1\n"
+                    .getBytes(StandardCharsets.UTF_8));
+        Table t = Table.readTable(name);
+        t.add(new Row(new String[] {"y", "2"}));
+        t.snapshot().writeTable(name);
+        assertEquals("A,B:int\nx,1\ny,2\n",
+                     new String(Files.readAllBytes(file.toPath()),
+                                StandardCharsets.UTF_8));
+        t.writeBinaryTable(name);
+        for (int i = 0; i < 2 * TableFile.MAX_EXTRA_GROUPS; i += 1) {
+            t.add(new Row(new String[] {"z", Integer.toString(i)}));
+            t.writeBinaryTable(name);
+            assertEquals(true, t.saved().groups()
+                         <= 1 + TableFile.MAX_EXTRA_GROUPS);
+        }
+        Table u = Table.readTable(name);
+        assertEquals(t.size(), u.size());
+        assertEquals("31", u.value(u.size() - 1, 1));
+        assertEquals(t.saved().groups(), u.saved().groups());
+    }
+
+    /** Return the result of joining T and U on their columns A and
+     *  selecting columns B and C, using PARALLELISM threads. */
+    private Table join(Table t, Table u, int parallelism) {
+        List<TableIterator> iters = new ArrayList<TableIterator>();
+        iters.add(t.tableIterator());
+        iters.add(u.tableIterator());
+        List<Column> cols = new ArrayList<Column>();
+        cols.add(new Column(t, "B"));
+        cols.add(new Column(u, "C"));
+        Column ta = new Column(t, "A"), ua = new Column(u, "A");
+        for (Column col : new Column[] {cols.get(0), cols.get(1), ta, ua}) {
+            col.resolve(iters);
+        }
+        List<Condition> conds = new ArrayList<Condition>();
+        conds.add(new Condition(ta, "=", ua));
+        conds.add(new Condition(cols.get(1), "!=", "c7"));
+        Table result = new Table("R", new String[] {"B", "C"});
+        RowSource rows = new Planner(iters, conds, parallelism).rows(cols);
+        try {
+            while (rows.next()) {
+                result.add(rows.row());
+            }
+        } finally {
+            rows.close();
+        }
+        return result;
+    }
+
+    /** Tests that a parallel select produces the same rows, in the same
+     *  order, as a sequential one. */
+    @Test
+    public void testParallelSelect() {
+        Table t = new Table("T", new String[] {"A", "B"}),
+            u = new Table("U", new String[] {"A", "C"});
+        for (int i = 0; i < 20000; i += 1) {
+            t.add(new Row(new String[] {"a" + i % 5000, "b" + i}));
+            u.add(new Row(new String[] {"a" + i % 7000, "c" + i % 10}));
+        }
+        Table seq = join(t, u, 1), par = join(t, u, 4);
+        assertEquals(seq.size(), par.size());
+        for (int k = 0; k < seq.size(); k += 1) {
+            assertEquals(seq.getRow(k), par.getRow(k));
+        }
+    }
+
+    /** Tests a pipeline of operators. */
+    @Test
+    public void testOperators() {
+        Table t = new Table("T", new String[] {"A", "B"});
+        t.add(new Row(new String[] {"1", "x"}));
+        t.add(new Row(new String[] {"2", "y"}));
+        t.add(new Row(new String[] {"3", "x"}));
+        List<TableIterator> iters = new ArrayList<TableIterator>();
+        iters.add(t.tableIterator());
+        Column a = new Column(t, "A"), b = new Column(t, "B");
+        a.resolve(iters);
+        b.resolve(iters);
+        List<Condition> conds = new ArrayList<Condition>();
+        conds.add(new Condition(a, "!=", "2"));
+        List<Column> cols = new ArrayList<Column>();
+        cols.add(b);
+        Table seen = new Table("R", new String[] {"B"});
+        RowSource rows =
+            new Distinct(new Project(new BatchScan(iters.get(0), null, 0,
+                                                   t.size(), conds),
+                                     cols), seen);
+        assertEquals(true, rows.next());
+        assertEquals(new Row(new String[] {"x"}), rows.row());
+        assertEquals(false, rows.next());
+        assertEquals(1, seen.size());
+    }
+
+    /** Tests that a BatchScan selects the rows that satisfy its
+     *  conditions one at a time, over several blocks of a columnar
+     *  table. */
+    @Test
+    public void testBatchScan() {
+        Table t = new Table("T", new String[] {"A", "B", "C"},
+                            new ColumnType[] {ColumnType.INT,
+                                              ColumnType.STRING,
+                                              ColumnType.DOUBLE},
+                            "columnar");
+        for (int i = 0; i < 3000; i += 1) {
+            t.add(new Row(new String[] {Integer.toString(i),
+                                        i % 3 == 0 ? "x" : "y",
+                                        Double.toString(i % 7 / 2.0)}));
+        }
+        List<TableIterator> iters = new ArrayList<TableIterator>();
+        iters.add(t.tableIterator());
+        Column a = new Column(t, "A"), b = new Column(t, "B"),
+            c = new Column(t, "C");
+        a.resolve(iters);
+        b.resolve(iters);
+        c.resolve(iters);
+        List<Condition> conds = new ArrayList<Condition>();
+        conds.add(new Condition(a, ">=", "100"));
+        conds.add(new Condition(b, "!=", "x"));
+        conds.add(new Condition(c, "<", "2.5"));
+        conds.add(new Condition(a, "!=", b));
+        TableIterator iter = iters.get(0);
+        List<Integer> expected = new ArrayList<Integer>(),
+            actual = new ArrayList<Integer>();
+        Operator rows = new Scan(iter, null, 0, t.size());
+        while (rows.next()) {
+            if (Condition.test(conds)) {
+                expected.add(iter.position());
+            }
+        }
+        rows = new BatchScan(iter, null, 0, t.size(), conds);
+        while (rows.next()) {
+            actual.add(iter.position());
+        }
+        assertEquals(1382, expected.size());
+        assertEquals(expected, actual);
+    }
+
+    /** Tests an external sort that spills to several runs. */
+    @Test
+    public void testSort() {
+        Table t = new Table("T", new String[] {"A", "B"});
+        for (int i = 0; i < 1000; i += 1) {
+            t.add(new Row(new String[] {"" + i % 300, "" + i % 2}));
+        }
+        List<TableIterator> iters = new ArrayList<TableIterator>();
+        iters.add(t.tableIterator());
+        List<Column> cols = new ArrayList<Column>();
+        cols.add(new Column(t, "A"));
+        cols.get(0).resolve(iters);
+        RowSource rows =
+            new Sort(new Project(new Scan(iters.get(0), null, 0, t.size()),
+                                 cols),
+                     Sort.order(new int[] {0}, new boolean[] {true},
+                                new boolean[] {true}), 1000, true);
+        for (int i = 299; i >= 0; i -= 1) {
+            assertEquals(true, rows.next());
+            assertEquals("" + i, rows.row().get(0));
+        }
+        assertEquals(false, rows.next());
+    }
+
+    /** Tests limits, with and without an order. */
+    @Test
+    public void testLimit() {
+        List<Row> input = new ArrayList<Row>();
+        for (int i = 0; i < 100; i += 1) {
+            input.add(new Row(new String[] {"" + i % 40}));
+        }
+        RowSource top =
+            new Sort(rows(input), Sort.order(new int[] {0},
+                                             new boolean[] {true},
+                                             new boolean[] {false}),
+                     1 << 20, true, 3);
+        for (int i = 0; i < 3; i += 1) {
+            assertEquals(true, top.next());
+            assertEquals("" + i, top.row().get(0));
+        }
+        assertEquals(false, top.next());
+        RowSource first = new Limit(rows(input), 2);
+        assertEquals(true, first.next());
+        assertEquals(true, first.next());
+        assertEquals("1", first.row().get(0));
+        assertEquals(false, first.next());
+    }
+
+    /** Tests that a Row holding some values as numbers equals, hashes,
+     *  and prints like one holding them all as Strings. */
+    @Test
+    public void testNumericRow() {
+        ColumnType[] types = {null, ColumnType.INT, ColumnType.DOUBLE};
+        Row row = new Row(new String[] {"a", null, null},
+                          new double[] {0, 7, 2.5}, types);
+        Row plain = new Row(new String[] {"a", "7", "2.5"});
+        assertEquals(7.0, row.number(1), 0);
+        assertEquals(2.5, plain.number(2), 0);
+        assertEquals(plain.hashCode(), row.hashCode());
+        assertEquals(true, row.equals(plain) && plain.equals(row));
+        assertEquals("7", row.get(1));
+    }
+
+    /** Tests hash aggregation, including spilling groups to disk. */
+    @Test
+    public void testAggregate() {
+        List<Row> input = new ArrayList<Row>();
+        for (int i = 0; i < 1000; i += 1) {
+            input.add(new Row(new String[] {"g" + i % 100, "" + i}));
+        }
+        ColumnType[] types = {ColumnType.STRING, ColumnType.INT};
+        Aggregate.Function[] functions = {Aggregate.Function.COUNT,
+                                          Aggregate.Function.SUM,
+                                          Aggregate.Function.MAX};
+        for (long memory : new long[] {1 << 20, 1000}) {
+            RowSource groups =
+                new Aggregate(rows(input), types, 1, functions,
+                              new int[] {-1, 1, 1}, new int[] {0, 1, 2, 3},
+                              memory);
+            Table result = new Table("R", new String[] {"G", "N", "S", "M"});
+            while (groups.next()) {
+                assertEquals(true, result.add(groups.row()));
+            }
+            assertEquals(100, result.size());
+            int k = result.find(new Row(new String[] {"g7", "10", "4570.0",
+                                                      "907"}));
+            assertEquals(true, k >= 0);
+        }
+        RowSource none =
+            new Aggregate(rows(new ArrayList<Row>()), types, 0, functions,
+                          new int[] {-1, 1, 1}, new int[] {1}, 1 << 20);
+        assertEquals(false, none.next());
+    }
+
+    /** Tests that a select that stops before aggregating all the groups
+     *  it spilled leaves no spill files. */
+    @Test
+    public void testSpillsClosed() {
+        StringBuilder script =
+            new StringBuilder("create table t (a, b int);"
+                              + "insert into t values ");
+        for (int i = 0; i < 5000; i += 1) {
+            script.append(i == 0 ? "" : ", ")
+                .append(String.format("('a%d', '%d')", i, i));
+        }
+        script.append(";set sort_memory = '1k';"
+                      + "select a, count(*) from t group by a limit 2;");
+        File temp = new File(System.getProperty("java.io.tmpdir"));
+        int before = spills(temp);
+        String output = run(script.toString());
+        assertEquals(true, output.endsWith("Search results:\n  a0 1\n"
+                                           + "  a1 1\n"));
+        assertEquals(before, spills(temp));
+    }
+
+    /** Tests that closing an Exchange before its last part shuts down
+     *  its threads. */
+    @Test
+    public void testExchangeClosed() throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Exchange exchange = new Exchange(pool, 8, 4, p -> {
+                List<Row> part = new ArrayList<Row>();
+                part.add(new Row(new String[] { "p" + p }));
+                return rows(part);
+            });
+        assertEquals(true, exchange.next());
+        assertEquals("p0", exchange.row().get(0));
+        exchange.close();
+        assertEquals(true, pool.isShutdown());
+        assertEquals(true, pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /** Return the number of spill files (see SpillFile) in DIR. */
+    private static int spills(File dir) {
+        String[] names = dir.list((d, name) -> name.startsWith("db61b-spill"));
+        return names == null ? 0 : names.length;
+    }
+
+    /** Tests that aggregate errors are reported without a header, and
+     *  without skipping the statement that follows, and that int sums
+     *  do not overflow. */
+    @Test
+    public void testAggregateErrors() {
+        String output = run("create table e (a, b int);"
+                            + "insert into e values 'x', '2147483647';"
+                            + "insert into e values 'y', '2147483647';"
+                            + "select sum(a) from e; select avg(a) from e;"
+                            + "select count(*) from e;"
+                            + "select sum(b) from e; select max(b) from e;"
+                            + "create table s as select sum(b) from e;"
+                            + "print s;");
+        assertEquals("Error: cannot apply sum to non-numeric column a\n"
+                     + "Error: cannot apply avg to non-numeric column a\n"
+                     + "Search results:\n  2\n"
+                     + "Search results:\n  4.294967294E9\n"
+                     + "Search results:\n  2147483647\n"
+                     + "Contents of s:\n  4.294967294E9\n", output);
+    }
+
+    /** Tests bitmap operations against BitSets, on both sparse and dense
+     *  chunks. */
+    @Test
+    public void testBitmap() {
+        Random random = new Random(61);
+        BitSet x = new BitSet(), y = new BitSet();
+        Bitmap a = new Bitmap(), b = new Bitmap();
+        for (int i = 0; i < 300000; i += 1) {
+            boolean dense = i < 1 << 16;
+            if (random.nextInt(dense ? 2 : 40) == 0) {
+                x.set(i);
+                a.add(i);
+            }
+            if (random.nextInt(dense ? 3 : 50) == 0) {
+                y.set(i);
+                b.add(i);
+            }
+        }
+        BitSet and = (BitSet) x.clone(), or = (BitSet) x.clone(),
+            andNot = (BitSet) x.clone();
+        and.and(y);
+        or.or(y);
+        andNot.andNot(y);
+        assertEquals(x.cardinality(), a.cardinality());
+        assertEquals(and.stream().boxed().collect(Collectors.toList()),
+                     list(a.and(b).toIntList()));
+        assertEquals(or.stream().boxed().collect(Collectors.toList()),
+                     list(a.or(b).toIntList()));
+        assertEquals(andNot.stream().boxed().collect(Collectors.toList()),
+                     list(a.andNot(b).toIntList()));
+        assertEquals(70000, Bitmap.range(70000).cardinality());
+        assertEquals(true, a.contains(x.nextSetBit(70000)));
+    }
+
+    /** Tests that a Lexer reads the same tokens, and reports the same
+     *  errors, as a Tokenizer. */
+    @Test
+    public void testLexer() {
+        String input = "create table T (A, B_1);\r\n"
+            + "insert into T values ('x y', '', '1.5')/* a\n*/;\n"
+            + "select A from T where A<='z' and B_1 != A and 12<3"
+            + " ! 5> x ,;\r\r 'open, 'also\n\u00e9 /**/ / * ; 'end'"
+            + " /* open *";
+        Tokenizer tokenizer =
+            new Tokenizer(new Scanner(input), null);
+        Lexer lexer = new Lexer(new StringReader(input), null);
+        List<String> expected = new ArrayList<String>(),
+            actual = new ArrayList<String>();
+        while (expected.isEmpty() || !expected.contains("*EOF*")) {
+            try {
+                expected.add(tokenizer.next()
+                             + (tokenizer.nextIs(Tokenizer.RELATION)
+                                ? " before relation" : ""));
+            } catch (DBException excp) {
+                expected.add(excp.getMessage());
+            }
+            try {
+                actual.add(lexer.next()
+                           + (lexer.nextIs(Tokenizer.RELATION)
+                              ? " before relation" : ""));
+            } catch (DBException excp) {
+                actual.add(excp.getMessage());
+            }
+        }
+        assertEquals(expected, actual);
+        assertEquals(true, expected.contains("unterminated comment"));
+        assertEquals(true, expected.contains("unterminated literal constant"));
+    }
+
+    /** Return the members of ROWS as a List. */
+    private static List<Integer> list(IntList rows) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (int i = 0; i < rows.size(); i += 1) {
+            result.add(rows.get(i));
+        }
+        return result;
+    }
+
+    /** Return a RowSource producing ROWS. */
+    private static RowSource rows(List<Row> rows) {
+        return new RowSource() {
+            private int _i;
+
+            @Override
+            public boolean next() {
+                _i += 1;
+                return _i <= rows.size();
+            }
+
+            @Override
+            public Row row() {
+                return rows.get(_i - 1);
+            }
+        };
+    }
+
     public static void main(String[] args) {
         System.exit(ucb.junit.textui.runClasses(UnitTests.class));
     }
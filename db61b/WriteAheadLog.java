@@ -0,0 +1,507 @@
+package db61b;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static db61b.Utils.*;
+
+/** A write-ahead log of the changes made to the tables of a Catalog, from
+ *  which they are rebuilt when the database is next opened.  Each
+ *  statement that changes tables appends records describing its effect:
+ *
+ *    CREATE:  a table's name, storage, and column titles and types,
+ *             replacing any table of that name;
+ *    ROWS:    rows added to a table (at most ROWS_PER_RECORD of them);
+ *    INDEX:   an index created on a table, with its name, column, and
+ *             kind ("ordered" or "bitmap").
+ *
+ *  Loading a table or creating one from a select logs its rows, so that
+ *  replaying the log does not depend on any other file.  Each record is
+ *  framed by its length and a CRC-32 of its contents, so that a record
+ *  torn by a crash is recognized and discarded, along with anything
+ *  after it.
+ *
+ *  Records are appended to a buffer in memory, and made durable by sync,
+ *  which writes and forces out everything appended so far (group
+ *  commit): while one statement waits for the disk, the statements that
+ *  commit after it append their records, and the next sync covers them
+ *  all.
+ *
+ *  When the log exceeds a given size, it is checkpointed: the records
+ *  that recreate every table as it now is are written to a separate
+ *  checkpoint file, which atomically replaces the previous one, and the
+ *  log is truncated.  Opening the log replays the checkpoint and then
+ *  the log.  Replaying a record twice is harmless (tables are sets, and
+ *  an index that already exists is not recreated), so a crash between
+ *  replacing the checkpoint and truncating the log loses nothing.
+ *  @author Yasaman Bahri
+ */
+class WriteAheadLog {
+
+    /** Default size of the log, in bytes, at which it is checkpointed. */
+    static final long CHECKPOINT_SIZE = 64L << 20;
+    /** Number of bytes of records that may be left unsynced for a later
+     *  statement to sync (see sync). */
+    private static final int GROUP_SIZE = 1 << 20;
+    /** Maximum number of rows in a ROWS record. */
+    private static final int ROWS_PER_RECORD = 4096;
+    /** Kinds of record. */
+    private static final byte CREATE = 1, ROWS = 2, INDEX = 3;
+
+    /** The log kept in the file named PATH, after replaying its latest
+     *  checkpoint and then the log itself into TABLES, which maps names
+     *  to tables.  The log is checkpointed when it reaches CHECKPOINTSIZE
+     *  bytes.  The file is created if it does not exist, and any torn
+     *  record at its end removed. */
+    WriteAheadLog(String path, Map<String, Table> tables,
+                  long checkpointSize) {
+        _file = new File(path);
+        _checkpoint = new File(path + ".checkpoint");
+        _checkpointSize = checkpointSize;
+        try {
+            if (_checkpoint.exists()
+                && replay(_checkpoint, tables) != _checkpoint.length()) {
+                throw error("corrupt checkpoint: %s", _checkpoint);
+            }
+            long end = _file.exists() ? replay(_file, tables) : 0;
+            _channel = FileChannel.open(_file.toPath(),
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.WRITE);
+            _channel.truncate(end);
+            _channel.position(end);
+            _size = end;
+        } catch (IOException excp) {
+            throw error("cannot open log %s: %s", path, excp.getMessage());
+        }
+    }
+
+    /** Log the creation of TABLE, with its current rows.  Returns the
+     *  position just past the records appended, to be passed to sync. */
+    synchronized long created(Table table) {
+        int start = _pending.size();
+        writeCreate(_out, table);
+        writeRows(_out, table, 0);
+        return appended(start);
+    }
+
+    /** Log the addition to TABLE of its rows from position FROM on.
+     *  Returns a position as for created. */
+    synchronized long added(Table table, int from) {
+        int start = _pending.size();
+        writeRows(_out, table, from);
+        return appended(start);
+    }
+
+    /** Log the creation of an index of kind KIND named NAME on the column
+     *  of TABLE titled COLUMN.  Returns a position as for created. */
+    synchronized long indexed(Table table, String name, String column,
+                              String kind) {
+        int start = _pending.size();
+        writeIndex(_out, table.name(), name, column, kind);
+        return appended(start);
+    }
+
+    /** Account for the records written to _pending from position START
+     *  on, and return the position just past them. */
+    private long appended(int start) {
+        _appended += _pending.size() - start;
+        return _appended;
+    }
+
+    /** Make durable the records appended before position LSN, and any
+     *  others appended since.  If LATER, they may instead be left to be
+     *  synced with those of a later statement, unless GROUP_SIZE bytes
+     *  are already waiting.  If another thread is already syncing, waits
+     *  for it to finish and then, if need be, syncs everything it did
+     *  not cover. */
+    void sync(long lsn, boolean later) {
+        byte[] bytes;
+        long end;
+        synchronized (this) {
+            if (later && _pending.size() < GROUP_SIZE) {
+                return;
+            }
+            while (_syncing && _durable < lsn) {
+                await();
+            }
+            if (_durable >= lsn) {
+                return;
+            }
+            if (_failure != null) {
+                throw error("cannot write log: %s", _failure);
+            }
+            _syncing = true;
+            bytes = _pending.toByteArray();
+            _pending.reset();
+            end = _appended;
+        }
+        boolean done = false;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                _channel.write(buffer);
+            }
+            _channel.force(false);
+            done = true;
+        } catch (IOException excp) {
+            synchronized (this) {
+                _failure = excp.getMessage();
+            }
+            throw error("cannot write log: %s", excp.getMessage());
+        } finally {
+            synchronized (this) {
+                _syncing = false;
+                if (done) {
+                    _durable = end;
+                    _size += bytes.length;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /** Return true iff I have reached the size at which I should be
+     *  checkpointed. */
+    synchronized boolean full() {
+        return _size + _pending.size() >= _checkpointSize;
+    }
+
+    /** Checkpoint: replace my checkpoint file with one recreating the
+     *  tables in TABLES, and truncate the log, making everything appended
+     *  so far durable.  TABLES must include the effects of every record
+     *  appended, and must not change meanwhile. */
+    void checkpoint(Map<String, Table> tables) {
+        synchronized (this) {
+            while (_syncing) {
+                await();
+            }
+            _syncing = true;
+        }
+        boolean done = false;
+        try {
+            File temp = new File(_checkpoint.getPath() + ".tmp");
+            try (FileOutputStream stream = new FileOutputStream(temp)) {
+                DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(stream));
+                for (Table table : tables.values()) {
+                    writeCreate(out, table);
+                    writeRows(out, table, 0);
+                    for (OrderedIndex index : table.indexes()) {
+                        writeIndex(out, table.name(), index.name(),
+                                   table.title(index.column()), "ordered");
+                    }
+                    for (BitmapIndex index : table.bitmapIndexes()) {
+                        writeIndex(out, table.name(), index.name(),
+                                   table.title(index.column()), "bitmap");
+                    }
+                }
+                out.flush();
+                stream.getChannel().force(true);
+            }
+            Files.move(temp.toPath(), _checkpoint.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+            _channel.truncate(0);
+            _channel.position(0);
+            _channel.force(true);
+            done = true;
+        } catch (IOException excp) {
+            throw error("cannot write checkpoint: %s", excp.getMessage());
+        } finally {
+            synchronized (this) {
+                _syncing = false;
+                if (done) {
+                    _pending.reset();
+                    _durable = _appended;
+                    _size = 0;
+                    _failure = null;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /** Force out the directory containing my files, so that the renaming
+     *  of a checkpoint survives a crash, where the platform allows. */
+    private void syncDirectory() {
+        File dir = _file.getAbsoluteFile().getParentFile();
+        try (FileChannel channel = FileChannel.open(dir.toPath(),
+                                                    StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            /* Directories cannot be opened here: nothing more to do. */
+        }
+    }
+
+    /** Wait to be notified, treating interruption as an error. */
+    private void await() {
+        try {
+            wait();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted while writing log");
+        }
+    }
+
+    /** Write to OUT a CREATE record for TABLE. */
+    private static void writeCreate(DataOutputStream out, Table table) {
+        Record record = new Record(CREATE, table.name());
+        record.writeString(table.storage());
+        record.writeInt(table.numColumns());
+        for (int k = 0; k < table.numColumns(); k += 1) {
+            record.writeString(table.title(k));
+            record.writeByte(table.type(k).ordinal());
+        }
+        record.writeTo(out);
+    }
+
+    /** Write to OUT ROWS records for the rows of TABLE from position FROM
+     *  on. */
+    private static void writeRows(DataOutputStream out, Table table,
+                                  int from) {
+        for (int i = from; i < table.size(); i += ROWS_PER_RECORD) {
+            int n = Math.min(ROWS_PER_RECORD, table.size() - i);
+            Record record = new Record(ROWS, table.name());
+            record.writeInt(n);
+            for (int r = i; r < i + n; r += 1) {
+                for (int k = 0; k < table.numColumns(); k += 1) {
+                    record.writeString(table.value(r, k));
+                }
+            }
+            record.writeTo(out);
+        }
+    }
+
+    /** Write to OUT an INDEX record for an index of kind KIND named NAME
+     *  on the column titled COLUMN of the table named TABLE. */
+    private static void writeIndex(DataOutputStream out, String table,
+                                   String name, String column, String kind) {
+        Record record = new Record(INDEX, table);
+        record.writeString(name);
+        record.writeString(column);
+        record.writeString(kind);
+        record.writeTo(out);
+    }
+
+    /** Apply the records in FILE to TABLES, stopping at the end of the
+     *  file or at the first incomplete or damaged record.  Returns the
+     *  length of the part of FILE applied. */
+    private static long replay(File file, Map<String, Table> tables)
+        throws IOException {
+        long end = 0;
+        long length = file.length();
+        CRC32 crc = new CRC32();
+        try (DataInputStream in =
+             new DataInputStream(new BufferedInputStream(
+                                     new FileInputStream(file)))) {
+            while (true) {
+                byte[] contents;
+                int sum;
+                try {
+                    int size = in.readInt();
+                    sum = in.readInt();
+                    if (size <= 0 || size > length - end - 8) {
+                        return end;
+                    }
+                    contents = new byte[size];
+                    in.readFully(contents);
+                } catch (EOFException excp) {
+                    return end;
+                }
+                crc.reset();
+                crc.update(contents);
+                if ((int) crc.getValue() != sum) {
+                    return end;
+                }
+                try {
+                    apply(new DataInputStream(
+                              new ByteArrayInputStream(contents)), tables);
+                } catch (DBException | IOException
+                         | IndexOutOfBoundsException excp) {
+                    throw error("corrupt log record in %s at %d", file, end);
+                }
+                end += 8 + contents.length;
+            }
+        }
+    }
+
+    /** Apply the record read from IN to TABLES. */
+    private static void apply(DataInputStream in, Map<String, Table> tables)
+        throws IOException {
+        byte kind = in.readByte();
+        String name = readString(in);
+        switch (kind) {
+        case CREATE:
+            tables.put(name, readCreate(in, name));
+            break;
+        case ROWS:
+            readRows(in, table(tables, name));
+            break;
+        case INDEX:
+            readIndex(in, table(tables, name));
+            break;
+        default:
+            throw error("unknown record kind: %d", kind);
+        }
+    }
+
+    /** Return the table named NAME in TABLES, which must exist. */
+    private static Table table(Map<String, Table> tables, String name) {
+        Table table = tables.get(name);
+        if (table == null) {
+            throw error("unknown table: %s", name);
+        }
+        return table;
+    }
+
+    /** Return the new, empty table named NAME defined by the rest of the
+     *  CREATE record IN. */
+    private static Table readCreate(DataInputStream in, String name)
+        throws IOException {
+        String storage = readString(in);
+        String[] titles = new String[in.readInt()];
+        ColumnType[] types = new ColumnType[titles.length];
+        for (int k = 0; k < titles.length; k += 1) {
+            titles[k] = readString(in);
+            types[k] = ColumnType.values()[in.readByte()];
+        }
+        return new Table(name, titles, types, storage);
+    }
+
+    /** Add to TABLE the rows in the rest of the ROWS record IN. */
+    private static void readRows(DataInputStream in, Table table)
+        throws IOException {
+        int n = in.readInt();
+        List<Row> rows = new ArrayList<Row>(n);
+        for (int r = 0; r < n; r += 1) {
+            String[] data = new String[table.numColumns()];
+            for (int k = 0; k < data.length; k += 1) {
+                data[k] = readString(in);
+            }
+            rows.add(new Row(data));
+        }
+        table.addAll(rows);
+    }
+
+    /** Create on TABLE the index described by the rest of the INDEX
+     *  record IN, unless it already has an index by that name. */
+    private static void readIndex(DataInputStream in, Table table)
+        throws IOException {
+        String name = readString(in);
+        String column = readString(in);
+        String kind = readString(in);
+        for (OrderedIndex index : table.indexes()) {
+            if (index.name().equals(name)) {
+                return;
+            }
+        }
+        for (BitmapIndex index : table.bitmapIndexes()) {
+            if (index.name().equals(name)) {
+                return;
+            }
+        }
+        if (kind.equals("bitmap")) {
+            table.createBitmapIndex(name, column);
+        } else {
+            table.createIndex(name, column);
+        }
+    }
+
+    /** Return the string read from IN, as written by
+     *  Record.writeString. */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** The contents of a record being written. */
+    private static class Record extends ByteArrayOutputStream {
+
+        /** A record of kind KIND concerning the table named TABLE. */
+        Record(byte kind, String table) {
+            write(kind);
+            writeString(table);
+        }
+
+        /** Append the byte B. */
+        void writeByte(int b) {
+            write(b);
+        }
+
+        /** Append X, big-endian. */
+        void writeInt(int x) {
+            write(x >>> 24);
+            write(x >>> 16);
+            write(x >>> 8);
+            write(x);
+        }
+
+        /** Append S: the length of its UTF-8 encoding, then the
+         *  encoding. */
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        /** Write me to OUT, preceded by my length and CRC-32. */
+        void writeTo(DataOutputStream out) {
+            CRC32 crc = new CRC32();
+            crc.update(buf, 0, count);
+            try {
+                out.writeInt(count);
+                out.writeInt((int) crc.getValue());
+                out.write(buf, 0, count);
+            } catch (IOException excp) {
+                throw error("cannot write log record: %s",
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /** The file holding the log. */
+    private final File _file;
+    /** The file holding the latest checkpoint. */
+    private final File _checkpoint;
+    /** Size of the log at which it is checkpointed. */
+    private final long _checkpointSize;
+    /** Channel writing _file. */
+    private FileChannel _channel;
+    /** Records appended but not yet written to _channel. */
+    private final ByteArrayOutputStream _pending =
+        new ByteArrayOutputStream();
+    /** Output appending to _pending. */
+    private final DataOutputStream _out = new DataOutputStream(_pending);
+    /** Number of bytes of records appended since the log was opened. */
+    private long _appended;
+    /** Number of bytes of records appended since the log was opened that
+     *  are durable. */
+    private long _durable;
+    /** Number of bytes in _file. */
+    private long _size;
+    /** True while a thread is writing _pending or a checkpoint. */
+    private boolean _syncing;
+    /** The error that last prevented writing the log, or null. */
+    private String _failure;
+}